@@ -0,0 +1,39 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link BatchSupplier}, for suppliers backed by asynchronous clients.
+ *
+ * @param <T> type of elements in the batches
+ * @see BatchPublishers#publisher(AsyncBatchSupplier)
+ */
+@FunctionalInterface
+public interface AsyncBatchSupplier<T> {
+    /**
+     * Retrieve next batch of items, asynchronously
+     *
+     * @param nextBatchToken Token to request next batch of data (may be null)
+     * @return future completed with the Batch object representing retrieved batch (use Batch.emptyBatch() to
+     * represent empty batch), or exceptionally if the batch could not be retrieved; must not be null
+     */
+    CompletableFuture<Batch<T>> nextBatch(@Nullable String nextBatchToken);
+}
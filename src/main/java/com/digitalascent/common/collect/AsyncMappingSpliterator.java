@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import com.google.common.base.Throwables;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Spliterator that applies a function to the elements of a source spliterator on an executor, with up to
+ * 'parallelism' applications in flight, emitting results in source order.  The window of in-flight applications
+ * doubles as the reorder buffer: results that complete ahead of the oldest are held until it completes.
+ * <p>
+ * A failure of any in-flight application is propagated as soon as it occurs - rather than once it reaches the head
+ * of the window - and the remaining applications are cancelled.
+ *
+ * @param <T> type of source elements
+ * @param <R> type of mapped elements
+ */
+final class AsyncMappingSpliterator<T, R> implements Spliterator<R> {
+    private final Spliterator<T> source;
+    private final Function<? super T, ? extends R> mapper;
+    private final int parallelism;
+    private final Executor executor;
+    private final Deque<InFlight<R>> window = new ArrayDeque<>();
+    private final CompletableFuture<R> failure = new CompletableFuture<>();
+    private boolean sourceExhausted;
+
+    AsyncMappingSpliterator(Spliterator<T> source, Function<? super T, ? extends R> mapper, int parallelism, Executor executor) {
+        this.source = checkNotNull(source, "source is required");
+        this.mapper = checkNotNull(mapper, "mapper is required");
+        this.parallelism = parallelism;
+        this.executor = checkNotNull(executor, "executor is required");
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super R> action) {
+        while (!sourceExhausted && window.size() < parallelism) {
+            sourceExhausted = !source.tryAdvance(this::submit);
+        }
+        // left in the window until it completes, such that a failure or cancel() cancels it along with the others
+        InFlight<R> head = window.peekFirst();
+        if (head == null) {
+            return false;
+        }
+
+        R result;
+        try {
+            // wait for the head of the window, or any failure
+            CompletableFuture.anyOf(head.result, failure).join();
+            result = head.result.getNow(null);
+            if (failure.isCompletedExceptionally()) {
+                failure.join();
+            }
+        } catch (CompletionException e) {
+            cancel();
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
+        window.removeFirst();
+        action.accept(result);
+        return true;
+    }
+
+    /**
+     * Cancels all in-flight applications, interrupting those that are running
+     */
+    void cancel() {
+        window.forEach(inFlight -> inFlight.task.cancel(true));
+        window.clear();
+    }
+
+    private void submit(T element) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            try {
+                result.complete(mapper.apply(element));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+                failure.completeExceptionally(t);
+            }
+        }, null);
+        InFlight<R> inFlight = new InFlight<>(result, task);
+        window.addLast(inFlight);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // an application that never runs must not be left in the window, to be waited on forever
+            window.removeLastOccurrence(inFlight);
+            throw e;
+        }
+    }
+
+    @Nullable
+    @Override
+    public Spliterator<R> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        long estimate = source.estimateSize() + window.size();
+        return estimate < 0 ? Long.MAX_VALUE : estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return source.characteristics() & Spliterator.ORDERED;
+    }
+
+    private static final class InFlight<R> {
+        private final CompletableFuture<R> result;
+        private final FutureTask<Void> task;
+
+        InFlight(CompletableFuture<R> result, FutureTask<Void> task) {
+            this.result = result;
+            this.task = task;
+        }
+    }
+}
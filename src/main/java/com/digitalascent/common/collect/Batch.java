@@ -20,6 +20,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
 
 
 /**
@@ -33,6 +34,7 @@ public final class Batch<T> {
     @Nullable
     private final String nextToken;
     private final Iterable<T> iterable;
+    private final Iterable<T> source;
 
     public static <T> Batch<T> emptyBatch() {
         return new Batch<>(null, ImmutableList.of());
@@ -41,6 +43,7 @@ public final class Batch<T> {
     public Batch(@Nullable String nextToken, Iterable<T> iterable) {
         this.nextToken = nextToken;
         this.iterable = Iterables.unmodifiableIterable(iterable);
+        this.source = iterable;
     }
 
     @Nullable
@@ -51,4 +54,12 @@ public final class Batch<T> {
     Iterable<T> getIterable() {
         return iterable;
     }
+
+    /**
+     * @return number of elements if the batch was created from a collection, otherwise -1; never iterates the batch,
+     * which may be single-use
+     */
+    int knownSize() {
+        return source instanceof Collection ? ((Collection<?>) source).size() : -1;
+    }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Position within a batch-loading stream: the token of the batch being consumed, and the number of elements of that
+ * batch already consumed.  Resuming re-fetches the batch with the token and skips the consumed elements.  A
+ * {@link #finished()} checkpoint marks a stream whose last element has been consumed; resuming fetches nothing.
+ */
+public final class BatchCheckpoint {
+    private static final BatchCheckpoint FINISHED = new BatchCheckpoint(null, 0, true);
+
+    @Nullable
+    private final String batchToken;
+    private final long offset;
+    private final boolean finished;
+
+    public BatchCheckpoint(@Nullable String batchToken, long offset) {
+        this(batchToken, offset, false);
+    }
+
+    private BatchCheckpoint(@Nullable String batchToken, long offset, boolean finished) {
+        checkArgument(offset >= 0, "offset >= 0 : %s", offset);
+        this.batchToken = batchToken;
+        this.offset = offset;
+        this.finished = finished;
+    }
+
+    /**
+     * @return checkpoint of a stream whose elements have all been consumed
+     */
+    public static BatchCheckpoint finished() {
+        return FINISHED;
+    }
+
+    /**
+     * @return token used to fetch the batch being consumed; null for the first batch
+     */
+    @Nullable
+    public String getBatchToken() {
+        return batchToken;
+    }
+
+    /**
+     * @return number of elements of the batch already consumed
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return true if all elements of the stream have been consumed
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        BatchCheckpoint that = (BatchCheckpoint) o;
+        return offset == that.offset && finished == that.finished && Objects.equals(batchToken, that.batchToken);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(batchToken, offset, finished);
+    }
+
+    @Override
+    public String toString() {
+        return "BatchCheckpoint{" +
+                "batchToken='" + batchToken + '\'' +
+                ", offset=" + offset +
+                ", finished=" + finished +
+                '}';
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import javax.annotation.Nullable;
+
+/**
+ * Persists the {@link BatchCheckpoint} of a resumable batch-loading stream.  Implementations report failures as
+ * unchecked exceptions (e.g. UncheckedIOException), which propagate to the stream's consumer.
+ *
+ * @see ExtraStreams#resumableBatchLoadingStream(BatchSupplier, BatchCheckpointStore, java.time.Duration)
+ */
+public interface BatchCheckpointStore {
+    /**
+     * @return the most recently saved checkpoint, or null if there is none
+     */
+    @Nullable
+    BatchCheckpoint load();
+
+    void save(BatchCheckpoint checkpoint);
+
+    /**
+     * Removes any saved checkpoint; called once the stream has been fully consumed
+     */
+    void clear();
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Governs how {@link BatchSuppliers#withFetchPolicy(BatchSupplier, BatchFetchPolicy)} fetches batches: an optional
+ * rate limit on fetches, and retries of a failed fetch (of the same token) with exponential backoff and full jitter -
+ * each delay is drawn uniformly from [0, min(maximumBackoff, initialBackoff * 2^retry)].
+ * <p>
+ * The rate limiter is shared by all suppliers decorated with the same policy, such that e.g. the segments of a
+ * segmented stream collectively stay within the limit.
+ * <p>
+ * Instances are immutable; the with* methods return modified copies.
+ */
+public final class BatchFetchPolicy {
+    private static final int DEFAULT_MAX_ATTEMPTS = 5;
+    private static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofMillis(100);
+    private static final Duration DEFAULT_MAXIMUM_BACKOFF = Duration.ofSeconds(20);
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maximumBackoffNanos;
+    private final Predicate<? super RuntimeException> retryable;
+    @Nullable
+    private final RateLimiter rateLimiter;
+
+    /**
+     * Retries any RuntimeException, up to 5 attempts, backing off from 100ms up to 20s; fetches are not rate limited
+     */
+    public static BatchFetchPolicy defaults() {
+        return new BatchFetchPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF.toNanos(), DEFAULT_MAXIMUM_BACKOFF.toNanos(),
+                e -> true, null);
+    }
+
+    private BatchFetchPolicy(int maxAttempts, long initialBackoffNanos, long maximumBackoffNanos,
+                             Predicate<? super RuntimeException> retryable, @Nullable RateLimiter rateLimiter) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = initialBackoffNanos;
+        this.maximumBackoffNanos = maximumBackoffNanos;
+        this.retryable = retryable;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * @param maxAttempts maximum number of attempts to fetch each batch, including the first; 1 disables retries
+     */
+    public BatchFetchPolicy withMaxAttempts(int maxAttempts) {
+        checkArgument(maxAttempts > 0, "maxAttempts > 0 : %s", maxAttempts);
+        return new BatchFetchPolicy(maxAttempts, initialBackoffNanos, maximumBackoffNanos, retryable, rateLimiter);
+    }
+
+    public BatchFetchPolicy withBackoff(Duration initialBackoff, Duration maximumBackoff) {
+        checkNotNull(initialBackoff, "initialBackoff is required");
+        checkNotNull(maximumBackoff, "maximumBackoff is required");
+        checkArgument(!initialBackoff.isNegative() && initialBackoff.compareTo(maximumBackoff) <= 0,
+                "0 <= initialBackoff <= maximumBackoff : %s, %s", initialBackoff, maximumBackoff);
+        return new BatchFetchPolicy(maxAttempts, initialBackoff.toNanos(), maximumBackoff.toNanos(), retryable, rateLimiter);
+    }
+
+    /**
+     * Only retries fetches that fail with an exception matching the predicate, e.g. throttling or transient network
+     * errors; other exceptions end the stream immediately
+     */
+    public BatchFetchPolicy retryingOn(Predicate<? super RuntimeException> retryable) {
+        checkNotNull(retryable, "retryable is required");
+        return new BatchFetchPolicy(maxAttempts, initialBackoffNanos, maximumBackoffNanos, retryable, rateLimiter);
+    }
+
+    /**
+     * Limits fetches to the provided rate, using a token bucket that permits bursts of up to one second's worth of fetches
+     *
+     * @param fetchesPerSecond sustained rate of fetches
+     */
+    public BatchFetchPolicy withRateLimit(double fetchesPerSecond) {
+        checkArgument(fetchesPerSecond > 0, "fetchesPerSecond > 0 : %s", fetchesPerSecond);
+        return withRateLimiter(RateLimiter.create(fetchesPerSecond));
+    }
+
+    /**
+     * Limits fetches using the provided rate limiter, which may be shared with other clients of the same API
+     */
+    public BatchFetchPolicy withRateLimiter(RateLimiter rateLimiter) {
+        checkNotNull(rateLimiter, "rateLimiter is required");
+        return new BatchFetchPolicy(maxAttempts, initialBackoffNanos, maximumBackoffNanos, retryable, rateLimiter);
+    }
+
+    int maxAttempts() {
+        return maxAttempts;
+    }
+
+    boolean isRetryable(RuntimeException e) {
+        return retryable.test(e);
+    }
+
+    /**
+     * Waits for permission to fetch
+     *
+     * @return time spent waiting, in nanoseconds
+     */
+    long acquireFetchPermit() {
+        if (rateLimiter == null) {
+            return 0;
+        }
+        return (long) (rateLimiter.acquire() * 1_000_000_000L);
+    }
+
+    /**
+     * @param retry zero-based index of the retry
+     * @return delay before the retry, in nanoseconds
+     */
+    long backoffNanos(int retry) {
+        long ceiling = initialBackoffNanos;
+        for (int i = 0; i < retry && ceiling < maximumBackoffNanos; i++) {
+            ceiling *= 2;
+        }
+        ceiling = Math.min(ceiling, maximumBackoffNanos);
+        return ceiling == 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
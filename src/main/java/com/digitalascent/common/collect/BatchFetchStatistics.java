@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe counters describing the fetches of one or more suppliers decorated with a {@link BatchFetchPolicy}.
+ */
+public final class BatchFetchStatistics {
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failedFetches = new LongAdder();
+    private final LongAdder throttleWaitNanos = new LongAdder();
+    private final LongAdder backoffNanos = new LongAdder();
+
+    void recordFetch() {
+        fetches.increment();
+    }
+
+    void recordRetry(long backoff) {
+        retries.increment();
+        backoffNanos.add(backoff);
+    }
+
+    void recordFailedFetch() {
+        failedFetches.increment();
+    }
+
+    void recordThrottleWait(long nanos) {
+        throttleWaitNanos.add(nanos);
+    }
+
+    /**
+     * @return number of fetch attempts, including retries
+     */
+    public long fetches() {
+        return fetches.sum();
+    }
+
+    public long retries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return number of batches that could not be fetched, having exhausted retries or failed with a non-retryable exception
+     */
+    public long failedFetches() {
+        return failedFetches.sum();
+    }
+
+    /**
+     * @return time spent waiting on the rate limiter
+     */
+    public long throttleWait(TimeUnit unit) {
+        return unit.convert(throttleWaitNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return time spent backing off between retries
+     */
+    public long backoff(TimeUnit unit) {
+        return unit.convert(backoffNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "BatchFetchStatistics{" +
+                "fetches=" + fetches() +
+                ", retries=" + retries() +
+                ", failedFetches=" + failedFetches() +
+                ", throttleWaitMillis=" + throttleWait(TimeUnit.MILLISECONDS) +
+                ", backoffMillis=" + backoff(TimeUnit.MILLISECONDS) +
+                '}';
+    }
+}
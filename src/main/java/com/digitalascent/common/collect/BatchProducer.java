@@ -0,0 +1,229 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.digitalascent.common.collect;
+
+import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Verify.verify;
+
+/**
+ * Loads chained batches from a BatchSupplier onto a {@link PrefetchQueue}, for consumption by a
+ * {@link QueueSpliterator}; the queue is poisoned once the producer finishes, including when it fails.
+ * <p>
+ * Each batch is fetched by its own short task on the executor, submitted once the queue has room for it; while the
+ * queue is full no task is submitted, and the consumer's next take resumes fetching.  No executor thread is held
+ * between fetches, such that a bounded executor can serve any number of open streams.  A fetch the executor rejects
+ * fails the producer.
+ * <p>
+ * The producer stops early when cancelled, or when the consumer becomes unreachable - detected via a
+ * weakly-referenced token held by the consumer, checked before each fetch - such that abandoned streams do not
+ * continue to load batches.
+ *
+ * @param <T> type of elements in the batches
+ */
+final class BatchProducer<T> {
+    private final BatchSupplier<T> batchSupplier;
+    private final PrefetchQueue<T> queue;
+    private final Iterable<T> poison;
+    private final WeakReference<Object> consumerToken;
+    @Nullable
+    private final BatchStreamListener listener;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    @Nullable
+    private Executor executor;
+    // only accessed by fetch tasks, which run one at a time
+    @Nullable
+    private String nextToken;
+    // guarded by this
+    private boolean fetchScheduled;
+    private long pausedAtNanos = -1;
+    private volatile boolean cancelled;
+    @Nullable
+    private volatile Future<?> currentFetch;
+
+    BatchProducer(BatchSupplier<T> batchSupplier, PrefetchQueue<T> queue, Iterable<T> poison, Object consumerToken) {
+        this(batchSupplier, queue, poison, consumerToken, null);
+    }
+
+    BatchProducer(BatchSupplier<T> batchSupplier, PrefetchQueue<T> queue, Iterable<T> poison, Object consumerToken,
+                  @Nullable BatchStreamListener listener) {
+        this.batchSupplier = checkNotNull(batchSupplier, "batchSupplier is required");
+        this.queue = checkNotNull(queue, "queue is required");
+        this.poison = checkNotNull(poison, "poison is required");
+        this.consumerToken = new WeakReference<>(checkNotNull(consumerToken, "consumerToken is required"));
+        this.listener = listener;
+    }
+
+    /**
+     * Submits the first fetch to the provided executor
+     *
+     * @throws RejectedExecutionException if the executor rejects it; the producer has then failed
+     */
+    void start(Executor executor) {
+        checkState(this.executor == null, "producer already started");
+        this.executor = checkNotNull(executor, "executor is required");
+        // once paused for room, each take may resume fetching; a fetch rejected then fails the producer, which the
+        // consumer sees after the batches already queued
+        queue.addTakeListener(this::resumeFetching);
+        RejectedExecutionException rejected = resumeFetching();
+        if (rejected != null) {
+            throw rejected;
+        }
+    }
+
+    /**
+     * @return completes once the producer has finished, exceptionally if it failed; cancelled if the producer was
+     */
+    CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    /**
+     * Stops the producer, interrupting any in-flight fetch
+     */
+    void cancel() {
+        cancelled = true;
+        completion.cancel(false);
+        Future<?> fetch = currentFetch;
+        if (fetch != null) {
+            fetch.cancel(true);
+        }
+    }
+
+    /**
+     * Submits the next fetch if none is scheduled and the queue has room
+     *
+     * @return the executor's rejection of the fetch, if rejected
+     */
+    @Nullable
+    private RejectedExecutionException resumeFetching() {
+        synchronized (this) {
+            if (fetchScheduled || completion.isDone() || !queue.reserve()) {
+                return null;
+            }
+            fetchScheduled = true;
+            if (pausedAtNanos >= 0 && listener != null) {
+                listener.producerBlocked(System.nanoTime() - pausedAtNanos);
+            }
+            pausedAtNanos = -1;
+        }
+        return submitFetch();
+    }
+
+    @Nullable
+    private RejectedExecutionException submitFetch() {
+        FutureTask<Void> fetch = new FutureTask<>(this::fetch, null);
+        currentFetch = fetch;
+        try {
+            checkNotNull(executor).execute(fetch);
+            return null;
+        } catch (RejectedExecutionException e) {
+            queue.release();
+            finish(e);
+            return e;
+        }
+    }
+
+    private void fetch() {
+        if (cancelled || consumerToken.get() == null) {
+            queue.release();
+            finish(null);
+            return;
+        }
+        Batch<T> batch;
+        try {
+            long fetchStartNanos = System.nanoTime();
+            batch = batchSupplier.nextBatch(nextToken);
+            long fetchNanos = System.nanoTime() - fetchStartNanos;
+            queue.recordFetch(fetchNanos);
+
+            verify(batch != null, "Null batch returned from %s", batchSupplier.getClass());
+            checkState(nextToken == null || !Objects.equals(nextToken, batch.getNextToken()), "Received the same batch token '%s' for two batches, aborting", nextToken);
+            if (listener != null) {
+                listener.batchFetched(fetchNanos, batch.knownSize());
+            }
+        } catch (Throwable t) {
+            queue.release();
+            finish(t);
+            return;
+        }
+        if (cancelled) {
+            queue.release();
+            return;
+        }
+
+        try {
+            if (listener == null) {
+                queue.put(batch.getIterable());
+            } else {
+                putReporting(batch, listener);
+            }
+        } catch (Throwable t) {
+            finish(t);
+            return;
+        }
+
+        nextToken = batch.getNextToken();
+        if (nextToken == null) {
+            finish(null);
+            return;
+        }
+        synchronized (this) {
+            fetchScheduled = !completion.isDone() && queue.reserve();
+            if (!fetchScheduled) {
+                // wait, without a thread, for the consumer to make room
+                pausedAtNanos = System.nanoTime();
+                return;
+            }
+        }
+        submitFetch();
+    }
+
+    private void putReporting(Batch<T> batch, BatchStreamListener listener) {
+        long putStartNanos = System.nanoTime();
+        queue.put(batch.getIterable());
+        listener.producerBlocked(System.nanoTime() - putStartNanos);
+        listener.queueDepthChanged(queue.depth());
+    }
+
+    /**
+     * Completes the producer and poisons the queue, notifying consumer that this producer is finished (the failure, if
+     * any, propagates to the consumer)
+     */
+    private void finish(@Nullable Throwable failure) {
+        if (failure == null) {
+            completion.complete(null);
+        } else {
+            completion.completeExceptionally(failure);
+        }
+        queue.add(poison);
+        if (consumerToken.get() == null) {
+            // nobody left to release the queue's resources
+            queue.close();
+        }
+    }
+}
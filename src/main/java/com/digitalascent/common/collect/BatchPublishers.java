@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import com.digitalascent.common.base.StaticUtilityClass;
+import org.reactivestreams.Publisher;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reactive Streams publishers over batch suppliers, for non-blocking consumers.  Batches are fetched only as
+ * subscriber demand calls for them - the next batch is requested once the current batch has been delivered and
+ * demand remains - and elements are delivered without blocking.  Cancelling a subscription stops fetching
+ * immediately, cancelling any in-flight fetch.
+ * <p>
+ * Each subscription pages through the batches independently, starting from the first batch.
+ */
+public final class BatchPublishers {
+
+    /**
+     * Returns a publisher over the batches of the provided asynchronous supplier
+     *
+     * @param batchSupplier the supplier that provides batches to publish
+     * @param <T>           type of element
+     * @return publisher of the elements in the supplied batches
+     */
+    public static <T> Publisher<T> publisher(AsyncBatchSupplier<T> batchSupplier) {
+        checkNotNull(batchSupplier, "batchSupplier is required");
+        return subscriber -> {
+            checkNotNull(subscriber, "subscriber is required");
+            new BatchSubscription<>(batchSupplier, subscriber).start();
+        };
+    }
+
+    /**
+     * Returns a publisher over the batches of the provided (blocking) supplier, fetching batches on the provided
+     * executor; cancelling a subscription interrupts an in-flight fetch.
+     *
+     * @param batchSupplier the supplier that provides batches to publish
+     * @param executor      executor to fetch batches on
+     * @param <T>           type of element
+     * @return publisher of the elements in the supplied batches
+     */
+    public static <T> Publisher<T> publisher(BatchSupplier<T> batchSupplier, Executor executor) {
+        checkNotNull(batchSupplier, "batchSupplier is required");
+        checkNotNull(executor, "executor is required");
+        return publisher(nextBatchToken -> {
+            CompletableFuture<Batch<T>> future = new CompletableFuture<>();
+            FutureTask<Void> fetch = new FutureTask<>(() -> {
+                try {
+                    future.complete(batchSupplier.nextBatch(nextBatchToken));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }, null);
+            future.whenComplete((batch, e) -> {
+                if (future.isCancelled()) {
+                    fetch.cancel(true);
+                }
+            });
+            executor.execute(fetch);
+            return future;
+        });
+    }
+
+    private BatchPublishers() {
+        StaticUtilityClass.throwCannotInstantiateError(getClass());
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+/**
+ * Receives metrics from a batch loading stream - e.g.
+ * {@link ExtraStreams#queuedBatchLoadingStream(BatchSupplier, PrefetchPolicy, BatchStreamListener, java.util.concurrent.Executor)}
+ * - to tell whether it is producer-bound (the consumer waits on fetches) or consumer-bound (the producer waits on a
+ * full queue).  See {@link BatchStreamStatistics} for a listener that accumulates them.
+ * <p>
+ * Methods are called on the producer and consumer threads, possibly concurrently; implementations must be thread-safe
+ * and quick.  Streams without a listener do not collect metrics at all.
+ */
+public interface BatchStreamListener {
+
+    /**
+     * Called after each {@link BatchSupplier#nextBatch(String)} call
+     *
+     * @param fetchNanos time the call took
+     * @param elements   number of elements in the batch, or -1 if it isn't known without iterating the batch (i.e.
+     *                   the batch wasn't created from a Collection)
+     */
+    default void batchFetched(long fetchNanos, int elements) {
+    }
+
+    /**
+     * Called after the producer adds a batch to the queue, and after the consumer takes one
+     *
+     * @param batches number of batches queued, including any spilled to disk
+     */
+    default void queueDepthChanged(int batches) {
+    }
+
+    /**
+     * Called after the producer adds a batch to the queue, and when it resumes after pausing for room in the queue
+     *
+     * @param nanos time spent adding the batch (e.g. spilling it to disk), or paused waiting for room in the queue
+     */
+    default void producerBlocked(long nanos) {
+    }
+
+    /**
+     * Called after the consumer takes a batch
+     *
+     * @param nanos time spent waiting for the batch - i.e. for the queue to fill, or for a synchronous fetch
+     */
+    default void consumerBlocked(long nanos) {
+    }
+}
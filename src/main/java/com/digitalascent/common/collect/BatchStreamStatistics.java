@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe {@link BatchStreamListener} that accumulates the metrics of one or more batch loading streams.  A
+ * producer-bound stream shows consumer block time close to fetch time; a consumer-bound stream shows producer block
+ * time and a queue that stays full.
+ */
+public final class BatchStreamStatistics implements BatchStreamListener {
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder elements = new LongAdder();
+    private final LongAdder fetchNanos = new LongAdder();
+    private final LongAdder producerBlockedNanos = new LongAdder();
+    private final LongAdder consumerBlockedNanos = new LongAdder();
+    private final LongAccumulator maximumQueueDepth = new LongAccumulator(Math::max, 0);
+
+    @Override
+    public void batchFetched(long fetchNanos, int elements) {
+        batches.increment();
+        if (elements >= 0) {
+            this.elements.add(elements);
+        }
+        this.fetchNanos.add(fetchNanos);
+    }
+
+    @Override
+    public void queueDepthChanged(int batches) {
+        maximumQueueDepth.accumulate(batches);
+    }
+
+    @Override
+    public void producerBlocked(long nanos) {
+        producerBlockedNanos.add(nanos);
+    }
+
+    @Override
+    public void consumerBlocked(long nanos) {
+        consumerBlockedNanos.add(nanos);
+    }
+
+    public long batches() {
+        return batches.sum();
+    }
+
+    /**
+     * @return number of elements in batches of known size; see {@link BatchStreamListener#batchFetched(long, int)}
+     */
+    public long elements() {
+        return elements.sum();
+    }
+
+    /**
+     * @return time spent in {@link BatchSupplier#nextBatch(String)} calls
+     */
+    public long fetchTime(TimeUnit unit) {
+        return unit.convert(fetchNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return time the producer spent waiting for room in the queue
+     */
+    public long producerBlockedTime(TimeUnit unit) {
+        return unit.convert(producerBlockedNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return time the consumer spent waiting for batches
+     */
+    public long consumerBlockedTime(TimeUnit unit) {
+        return unit.convert(consumerBlockedNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return largest number of batches observed in the queue
+     */
+    public long maximumQueueDepth() {
+        return maximumQueueDepth.get();
+    }
+
+    @Override
+    public String toString() {
+        return "BatchStreamStatistics{" +
+                "batches=" + batches() +
+                ", elements=" + elements() +
+                ", fetchMillis=" + fetchTime(TimeUnit.MILLISECONDS) +
+                ", producerBlockedMillis=" + producerBlockedTime(TimeUnit.MILLISECONDS) +
+                ", consumerBlockedMillis=" + consumerBlockedTime(TimeUnit.MILLISECONDS) +
+                ", maximumQueueDepth=" + maximumQueueDepth() +
+                '}';
+    }
+}
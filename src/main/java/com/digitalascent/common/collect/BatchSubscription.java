@@ -0,0 +1,194 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Subscription that pages through the batches of an {@link AsyncBatchSupplier} as demand calls for them.
+ * <p>
+ * All signals to the subscriber are serialized through a drain loop - whichever thread (requesting subscriber, or
+ * completing fetch) finds the loop idle runs it, others record that there is more work - such that the subscriber is
+ * never signalled concurrently or re-entrantly.  Fetch results are handed to the loop via volatile fields; all other
+ * state is confined to the loop.
+ *
+ * @param <T> type of elements in the batches
+ */
+final class BatchSubscription<T> implements Subscription {
+    private final AsyncBatchSupplier<T> batchSupplier;
+    private final Subscriber<? super T> subscriber;
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile boolean cancelled;
+    @Nullable
+    private volatile Batch<T> fetchedBatch;
+    @Nullable
+    private volatile Throwable failure;
+    @Nullable
+    private volatile CompletableFuture<Batch<T>> inFlight;
+
+    // confined to the drain loop
+    private Iterator<T> currentBatch = Collections.emptyIterator();
+    @Nullable
+    private String nextToken;
+    private boolean started;
+    private boolean fetching;
+    private boolean terminated;
+
+    BatchSubscription(AsyncBatchSupplier<T> batchSupplier, Subscriber<? super T> subscriber) {
+        this.batchSupplier = checkNotNull(batchSupplier, "batchSupplier is required");
+        this.subscriber = checkNotNull(subscriber, "subscriber is required");
+    }
+
+    void start() {
+        subscriber.onSubscribe(this);
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            failure = new IllegalArgumentException("request must be > 0 : " + n);
+        } else {
+            // accumulate demand, capped at Long.MAX_VALUE (unbounded)
+            requested.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+        }
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        CompletableFuture<Batch<T>> fetch = inFlight;
+        if (fetch != null) {
+            fetch.cancel(true);
+        }
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            if (!cancelled && !terminated) {
+                emit();
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void emit() {
+        long demand = requested.get();
+        long emitted = 0;
+        while (true) {
+            if (cancelled) {
+                return;
+            }
+            Throwable error = failure;
+            if (error != null) {
+                terminate();
+                subscriber.onError(error);
+                return;
+            }
+            if (!currentBatch.hasNext()) {
+                if (fetching && !adoptFetchedBatch()) {
+                    break;
+                }
+                if (!currentBatch.hasNext()) {
+                    if (started && nextToken == null) {
+                        terminate();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    if (emitted == demand) {
+                        break;
+                    }
+                    fetch();
+                    continue;
+                }
+            }
+            if (emitted == demand) {
+                break;
+            }
+            subscriber.onNext(currentBatch.next());
+            emitted++;
+        }
+        if (emitted != 0 && demand != Long.MAX_VALUE) {
+            requested.addAndGet(-emitted);
+        }
+    }
+
+    /**
+     * @return true if the in-flight fetch has completed and its batch is now current
+     */
+    private boolean adoptFetchedBatch() {
+        Batch<T> batch = fetchedBatch;
+        if (batch == null) {
+            return false;
+        }
+        fetchedBatch = null;
+        fetching = false;
+        currentBatch = batch.getIterable().iterator();
+        nextToken = batch.getNextToken();
+        started = true;
+        return true;
+    }
+
+    private void fetch() {
+        String token = nextToken;
+        fetching = true;
+        CompletableFuture<Batch<T>> future;
+        try {
+            future = checkNotNull(batchSupplier.nextBatch(token), "Null future returned from %s", batchSupplier.getClass());
+        } catch (RuntimeException e) {
+            failure = e;
+            return;
+        }
+        inFlight = future;
+        future.whenComplete((batch, e) -> {
+            inFlight = null;
+            if (e != null) {
+                failure = e;
+            } else if (batch == null) {
+                failure = new IllegalStateException(String.format("Null batch returned from %s", batchSupplier.getClass()));
+            } else if (batch.getNextToken() != null && Objects.equals(token, batch.getNextToken())) {
+                failure = new IllegalStateException(String.format("Received the same batch token '%s' for two batches, aborting", token));
+            } else {
+                fetchedBatch = batch;
+            }
+            drain();
+        });
+    }
+
+    private void terminate() {
+        terminated = true;
+        cancelled = true;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import com.digitalascent.common.base.StaticUtilityClass;
+
+import java.time.Duration;
+
+/**
+ * Decorators for {@link BatchSupplier}
+ */
+public final class BatchSuppliers {
+
+    /**
+     * Returns a supplier that fetches batches from the provided supplier as governed by the provided policy, such
+     * that throttling or transient failures of a single page are retried rather than ending the stream.
+     * <p>
+     * Example usage:
+     * <pre>
+     * BatchFetchStatistics statistics = new BatchFetchStatistics();
+     * BatchFetchPolicy policy = BatchFetchPolicy.defaults()
+     *      .withRateLimit(20)
+     *      .retryingOn(e -&gt; e instanceof ThrottlingException);
+     * return ExtraStreams.batchLoadingStream(BatchSuppliers.withFetchPolicy(supplier, policy, statistics));
+     * </pre>
+     *
+     * @param batchSupplier the supplier to decorate
+     * @param policy        rate limit and retry policy
+     * @param statistics    counters to record fetches, retries and throttle waits to
+     * @param <T>           type of element
+     * @return decorated supplier
+     */
+    public static <T> BatchSupplier<T> withFetchPolicy(BatchSupplier<T> batchSupplier, BatchFetchPolicy policy, BatchFetchStatistics statistics) {
+        return new PolicyBatchSupplier<>(batchSupplier, policy, statistics);
+    }
+
+    public static <T> BatchSupplier<T> withFetchPolicy(BatchSupplier<T> batchSupplier, BatchFetchPolicy policy) {
+        return withFetchPolicy(batchSupplier, policy, new BatchFetchStatistics());
+    }
+
+    /**
+     * Returns a supplier that caches the batches of the provided supplier by request token, for up to the provided
+     * number of batches and time-to-live; concurrent requests for the same token share a single fetch.
+     *
+     * @param batchSupplier  the supplier to decorate; must supply re-iterable batches
+     * @param maximumBatches maximum number of batches to cache, evicting the least recently used
+     * @param timeToLive     time after which a cached batch is re-fetched
+     * @param <T>            type of element
+     * @return caching supplier, exposing hit/miss statistics
+     */
+    public static <T> CachingBatchSupplier<T> caching(BatchSupplier<T> batchSupplier, long maximumBatches, Duration timeToLive) {
+        return new CachingBatchSupplier<>(batchSupplier, maximumBatches, timeToLive);
+    }
+
+    private BatchSuppliers() {
+        StaticUtilityClass.throwCannotInstantiateError(getClass());
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * Approximate key filter backed by a Bloom filter: never reports a repeated key as new, but reports a small fraction
+ * (the false positive probability) of new keys as already seen.
+ */
+final class BloomKeyFilter implements KeyFilter {
+    private final BloomFilter<Long> bloomFilter;
+    private final long memoryBytes;
+
+    BloomKeyFilter(long expectedKeys, double falsePositiveProbability) {
+        this.bloomFilter = BloomFilter.create(Funnels.longFunnel(), expectedKeys, falsePositiveProbability);
+        this.memoryBytes = bitsFor(expectedKeys, falsePositiveProbability) / Long.SIZE * Long.BYTES + Long.BYTES;
+    }
+
+    @Override
+    public boolean add(long key) {
+        // put reports whether any bit changed, i.e. whether the key was definitely not seen before
+        return bloomFilter.put(key);
+    }
+
+    @Override
+    public long memoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * @return the optimal number of bits for the provided number of keys and false positive probability, as per
+     * {@link BloomFilter#create(com.google.common.hash.Funnel, long, double)}
+     */
+    static long bitsFor(long expectedKeys, double falsePositiveProbability) {
+        return (long) (-expectedKeys * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+    }
+
+    /**
+     * @return the number of keys the provided number of bits can hold at the provided false positive probability
+     */
+    static long keysFor(long bits, double falsePositiveProbability) {
+        return (long) (-bits * Math.log(2) * Math.log(2) / Math.log(falsePositiveProbability));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Verify.verify;
+
+/**
+ * BatchSupplier that caches the batches of a delegate supplier by request token, such that streams paging through the
+ * same source within the time-to-live share fetches.  Concurrent requests for the same token are coalesced: one
+ * fetch runs, and the other callers wait for and share its result.  Failed fetches are not cached.
+ * <p>
+ * Cached batches are iterated once per stream, so the delegate must supply re-iterable batches (e.g. lists).
+ *
+ * @param <T> type of elements in the batches
+ * @see BatchSuppliers#caching(BatchSupplier, long, Duration)
+ */
+public final class CachingBatchSupplier<T> implements BatchSupplier<T> {
+    private final LoadingCache<Optional<String>, Batch<T>> cache;
+
+    CachingBatchSupplier(BatchSupplier<T> delegate, long maximumBatches, Duration timeToLive) {
+        checkNotNull(delegate, "delegate is required");
+        checkArgument(maximumBatches > 0, "maximumBatches > 0 : %s", maximumBatches);
+        checkNotNull(timeToLive, "timeToLive is required");
+        checkArgument(!timeToLive.isNegative() && !timeToLive.isZero(), "timeToLive > 0 : %s", timeToLive);
+
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumBatches)
+                .expireAfterWrite(timeToLive.toNanos(), TimeUnit.NANOSECONDS)
+                .recordStats()
+                .build(new CacheLoader<Optional<String>, Batch<T>>() {
+                    @Override
+                    public Batch<T> load(Optional<String> token) {
+                        Batch<T> batch = delegate.nextBatch(token.orElse(null));
+                        verify(batch != null, "Null batch returned from %s", delegate.getClass());
+                        return batch;
+                    }
+                });
+    }
+
+    @Override
+    public Batch<T> nextBatch(@Nullable String nextBatchToken) {
+        try {
+            return cache.getUnchecked(Optional.ofNullable(nextBatchToken));
+        } catch (UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
+    }
+
+    /**
+     * @return hit, miss and eviction counts; waiting on a coalesced fetch counts as a hit
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return number of delegate fetches avoided by serving cached (or coalesced) batches
+     */
+    public long fetchesSaved() {
+        return cache.stats().hitCount();
+    }
+
+    /**
+     * Discards all cached batches
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+}
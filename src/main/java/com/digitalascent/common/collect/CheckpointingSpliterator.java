@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import com.google.common.base.Ticker;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Verify.verify;
+
+/**
+ * Spliterator over the elements of chained batches that periodically saves its position - the token of the current
+ * batch and the number of its elements consumed - to a {@link BatchCheckpointStore}.  An element counts as consumed
+ * once the downstream action has returned; once a batch has been consumed the checkpoint moves to the start of the
+ * next batch (or, after the last batch, to {@link BatchCheckpoint#finished()}), such that resuming doesn't re-fetch it.
+ *
+ * @param <T> type of elements in the batches
+ */
+final class CheckpointingSpliterator<T> implements Spliterator<T> {
+    private final BatchSupplier<T> batchSupplier;
+    private final BatchCheckpointStore store;
+    private final long intervalNanos;
+    private final Ticker ticker;
+
+    private Iterator<T> currentBatch = Collections.emptyIterator();
+    @Nullable
+    private String currentToken;
+    @Nullable
+    private String nextToken;
+    private long offset;
+    private long skip;
+    private boolean started;
+    private boolean finished;
+    private long lastCheckpointNanos;
+
+    CheckpointingSpliterator(BatchSupplier<T> batchSupplier, BatchCheckpointStore store, @Nullable BatchCheckpoint resumeFrom,
+                             long intervalNanos, Ticker ticker) {
+        this.batchSupplier = checkNotNull(batchSupplier, "batchSupplier is required");
+        this.store = checkNotNull(store, "store is required");
+        this.intervalNanos = intervalNanos;
+        this.ticker = checkNotNull(ticker, "ticker is required");
+        if (resumeFrom != null && resumeFrom.isFinished()) {
+            // nothing left to fetch; the first tryAdvance completes the stream
+            this.started = true;
+        } else if (resumeFrom != null) {
+            this.nextToken = resumeFrom.getBatchToken();
+            this.skip = resumeFrom.getOffset();
+        }
+        this.lastCheckpointNanos = ticker.read();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        checkNotNull(action, "action is required");
+        while (!currentBatch.hasNext()) {
+            if (finished || (started && nextToken == null)) {
+                if (!finished) {
+                    finished = true;
+                    store.clear();
+                }
+                return false;
+            }
+            fetchNextBatch();
+        }
+        action.accept(currentBatch.next());
+        offset++;
+        if (ticker.read() - lastCheckpointNanos >= intervalNanos) {
+            checkpoint();
+        }
+        return true;
+    }
+
+    /**
+     * Saves the current position, unless the stream has been fully consumed
+     */
+    void checkpoint() {
+        if (started && !finished) {
+            store.save(currentPosition());
+            lastCheckpointNanos = ticker.read();
+        }
+    }
+
+    private BatchCheckpoint currentPosition() {
+        if (currentBatch.hasNext()) {
+            return new BatchCheckpoint(currentToken, offset);
+        }
+        return nextToken == null ? BatchCheckpoint.finished() : new BatchCheckpoint(nextToken, 0);
+    }
+
+    private void fetchNextBatch() {
+        String token = nextToken;
+        Batch<T> batch = batchSupplier.nextBatch(token);
+        verify(batch != null, "Null batch returned from %s", batchSupplier.getClass());
+        checkState(batch.getNextToken() == null || !Objects.equals(token, batch.getNextToken()),
+                "Received the same batch token '%s' for two batches, aborting", token);
+
+        started = true;
+        currentToken = token;
+        nextToken = batch.getNextToken();
+        currentBatch = batch.getIterable().iterator();
+        offset = 0;
+
+        // skip elements consumed before resuming
+        for (; skip > 0 && currentBatch.hasNext(); skip--) {
+            currentBatch.next();
+            offset++;
+        }
+        skip = 0;
+    }
+
+    @Nullable
+    @Override
+    public Spliterator<T> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED;
+    }
+}
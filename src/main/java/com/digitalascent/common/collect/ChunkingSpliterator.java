@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Spliterator that groups the elements of a source spliterator into chunks, closing each chunk before the next element
+ * would take its total weight past the maximum; an element heavier than the maximum forms a chunk by itself.  Element
+ * weights must be non-negative.
+ *
+ * @param <T> type of elements
+ */
+final class ChunkingSpliterator<T> implements Spliterator<List<T>> {
+    private final Spliterator<T> source;
+    private final long maximumWeight;
+    private final ToLongFunction<? super T> weigher;
+
+    @Nullable
+    private T pending;
+    private boolean hasPending;
+
+    ChunkingSpliterator(Spliterator<T> source, long maximumWeight, ToLongFunction<? super T> weigher) {
+        this.source = checkNotNull(source, "source is required");
+        this.maximumWeight = maximumWeight;
+        this.weigher = checkNotNull(weigher, "weigher is required");
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super List<T>> action) {
+        List<T> chunk = new ArrayList<>();
+        long weight = 0;
+        while (hasPending || source.tryAdvance(this::setPending)) {
+            long elementWeight = weigher.applyAsLong(pending);
+            checkArgument(elementWeight >= 0, "element weight must be >= 0 : %s", elementWeight);
+            if (!chunk.isEmpty() && weight + elementWeight > maximumWeight) {
+                // leave the element pending, for the next chunk
+                break;
+            }
+            chunk.add(pending);
+            weight += elementWeight;
+            pending = null;
+            hasPending = false;
+            if (weight >= maximumWeight) {
+                break;
+            }
+        }
+        if (chunk.isEmpty()) {
+            return false;
+        }
+        action.accept(chunk);
+        return true;
+    }
+
+    private void setPending(T element) {
+        pending = element;
+        hasPending = true;
+    }
+
+    @Nullable
+    @Override
+    public Spliterator<List<T>> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return source.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+        return source.characteristics() & Spliterator.ORDERED;
+    }
+}
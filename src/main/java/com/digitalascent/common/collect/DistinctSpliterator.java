@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import javax.annotation.Nullable;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Spliterator that passes through only the elements of a source spliterator whose key the key filter has not seen.
+ *
+ * @param <T> type of elements
+ */
+final class DistinctSpliterator<T> implements Spliterator<T>, Consumer<T> {
+    private final Spliterator<T> source;
+    private final ToLongFunction<? super T> keyExtractor;
+    private final KeyFilter keyFilter;
+    private final DistinctStatistics statistics;
+    private long reportedMemoryBytes;
+
+    @Nullable
+    private T current;
+
+    DistinctSpliterator(Spliterator<T> source, ToLongFunction<? super T> keyExtractor, KeyFilter keyFilter, DistinctStatistics statistics) {
+        this.source = checkNotNull(source, "source is required");
+        this.keyExtractor = checkNotNull(keyExtractor, "keyExtractor is required");
+        this.keyFilter = checkNotNull(keyFilter, "keyFilter is required");
+        this.statistics = checkNotNull(statistics, "statistics is required");
+        reportMemory();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        while (source.tryAdvance(this)) {
+            T element = current;
+            current = null;
+            statistics.recordElement();
+            if (keyFilter.add(keyExtractor.applyAsLong(element))) {
+                statistics.recordDistinctElement();
+                reportMemory();
+                action.accept(element);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void accept(T element) {
+        current = element;
+    }
+
+    private void reportMemory() {
+        long memoryBytes = keyFilter.memoryBytes();
+        if (memoryBytes != reportedMemoryBytes) {
+            statistics.recordMemory(memoryBytes - reportedMemoryBytes);
+            reportedMemoryBytes = memoryBytes;
+        }
+    }
+
+    @Nullable
+    @Override
+    public Spliterator<T> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return source.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+        return source.characteristics() & (Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+}
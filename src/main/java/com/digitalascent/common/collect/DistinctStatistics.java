@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe counters describing one or more streams filtered by
+ * {@link ExtraStreams#distinctBy(java.util.stream.Stream, java.util.function.ToLongFunction, DistinctStrategy, DistinctStatistics)}.
+ */
+public final class DistinctStatistics {
+    private final LongAdder elements = new LongAdder();
+    private final LongAdder distinctElements = new LongAdder();
+    private final LongAdder memoryBytes = new LongAdder();
+
+    void recordElement() {
+        elements.increment();
+    }
+
+    void recordDistinctElement() {
+        distinctElements.increment();
+    }
+
+    void recordMemory(long bytes) {
+        memoryBytes.add(bytes);
+    }
+
+    /**
+     * @return number of elements filtered
+     */
+    public long elements() {
+        return elements.sum();
+    }
+
+    /**
+     * @return number of elements passed through as distinct
+     */
+    public long distinctElements() {
+        return distinctElements.sum();
+    }
+
+    /**
+     * @return bytes allocated to remember keys, on or off heap
+     */
+    public long memoryBytes() {
+        return memoryBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "DistinctStatistics{" +
+                "elements=" + elements() +
+                ", distinctElements=" + distinctElements() +
+                ", memoryBytes=" + memoryBytes() +
+                '}';
+    }
+}
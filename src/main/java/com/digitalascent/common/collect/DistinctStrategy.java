@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Governs how {@link ExtraStreams#distinctBy(java.util.stream.Stream, java.util.function.ToLongFunction, DistinctStrategy)}
+ * remembers the 64-bit keys it has seen.
+ * <p>
+ * An exact strategy keeps every key in an open-addressing hash set of primitive longs - 8 bytes per slot, at most 75%
+ * full - optionally off-heap, in direct buffers.  An approximate strategy keeps a Bloom filter of fixed size: it never
+ * lets a duplicate through, but drops the configured fraction of distinct elements as false positives.
+ * <p>
+ * Instances are immutable; the with* methods return modified copies.
+ */
+public final class DistinctStrategy {
+    private static final long DEFAULT_EXPECTED_KEYS = 1024;
+
+    private final long expectedKeys;
+    private final double falsePositiveProbability;
+    private final boolean offHeap;
+
+    /**
+     * Remembers every key, growing as needed
+     */
+    public static DistinctStrategy exact() {
+        return new DistinctStrategy(DEFAULT_EXPECTED_KEYS, 0, false);
+    }
+
+    /**
+     * Remembers every key, sized up front for the expected number of distinct keys
+     *
+     * @param expectedKeys expected number of distinct keys
+     */
+    public static DistinctStrategy exact(long expectedKeys) {
+        checkArgument(expectedKeys > 0, "expectedKeys > 0 : %s", expectedKeys);
+        return new DistinctStrategy(expectedKeys, 0, false);
+    }
+
+    /**
+     * Remembers keys in a Bloom filter sized for the expected number of distinct keys; beyond that, the false positive
+     * probability rises
+     *
+     * @param expectedKeys             expected number of distinct keys
+     * @param falsePositiveProbability acceptable fraction of distinct elements dropped as duplicates
+     */
+    public static DistinctStrategy approximate(long expectedKeys, double falsePositiveProbability) {
+        checkArgument(expectedKeys > 0, "expectedKeys > 0 : %s", expectedKeys);
+        checkArgument(falsePositiveProbability > 0 && falsePositiveProbability < 1,
+                "0 < falsePositiveProbability < 1 : %s", falsePositiveProbability);
+        return new DistinctStrategy(expectedKeys, falsePositiveProbability, false);
+    }
+
+    /**
+     * Remembers keys in a Bloom filter of (about) the provided size, holding as many keys as it can at the provided
+     * false positive probability
+     *
+     * @param maximumBytes             memory to allocate to the Bloom filter
+     * @param falsePositiveProbability acceptable fraction of distinct elements dropped as duplicates
+     */
+    public static DistinctStrategy approximateWithin(long maximumBytes, double falsePositiveProbability) {
+        checkArgument(maximumBytes > 0, "maximumBytes > 0 : %s", maximumBytes);
+        checkArgument(falsePositiveProbability > 0 && falsePositiveProbability < 1,
+                "0 < falsePositiveProbability < 1 : %s", falsePositiveProbability);
+        long expectedKeys = BloomKeyFilter.keysFor(maximumBytes * Byte.SIZE, falsePositiveProbability);
+        checkArgument(expectedKeys > 0, "maximumBytes too small for falsePositiveProbability : %s", maximumBytes);
+        return new DistinctStrategy(expectedKeys, falsePositiveProbability, false);
+    }
+
+    private DistinctStrategy(long expectedKeys, double falsePositiveProbability, boolean offHeap) {
+        this.expectedKeys = expectedKeys;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Stores the keys of an exact strategy in direct buffers, outside the Java heap (bounded by
+     * <code>-XX:MaxDirectMemorySize</code>); the buffers are released once the stream is garbage collected
+     */
+    public DistinctStrategy withOffHeapStorage() {
+        checkState(isExact(), "Off-heap storage is only supported by exact strategies");
+        return new DistinctStrategy(expectedKeys, falsePositiveProbability, true);
+    }
+
+    boolean isExact() {
+        return falsePositiveProbability == 0;
+    }
+
+    KeyFilter newKeyFilter() {
+        return isExact() ? new LongHashSet(expectedKeys, offHeap) : new BloomKeyFilter(expectedKeys, falsePositiveProbability);
+    }
+
+    @Override
+    public String toString() {
+        return "DistinctStrategy{" +
+                "expectedKeys=" + expectedKeys +
+                ", falsePositiveProbability=" + falsePositiveProbability +
+                ", offHeap=" + offHeap +
+                '}';
+    }
+}
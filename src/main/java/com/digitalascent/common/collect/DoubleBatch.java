@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+/**
+ * Represents a batch of double values, backed by a range of an array, for streaming without boxing.  Contains the 'next'
+ * token from the batch provider for loading the next batch; may be null if there is no next batch.
+ * <p>
+ * The array is not copied; it must not be modified once the batch has been supplied.
+ */
+public final class DoubleBatch {
+    private static final double[] EMPTY = new double[0];
+
+    @Nullable
+    private final String nextToken;
+    private final double[] values;
+    private final int offset;
+    private final int length;
+
+    public static DoubleBatch emptyBatch() {
+        return new DoubleBatch(null, EMPTY);
+    }
+
+    public DoubleBatch(@Nullable String nextToken, double[] values) {
+        this(nextToken, values, 0, checkNotNull(values, "values is required").length);
+    }
+
+    /**
+     * @param nextToken token to request the next batch; null if there is no next batch
+     * @param values    array holding the values of the batch
+     * @param offset    index of the first value of the batch
+     * @param length    number of values in the batch
+     */
+    public DoubleBatch(@Nullable String nextToken, double[] values, int offset, int length) {
+        checkNotNull(values, "values is required");
+        checkPositionIndexes(offset, offset + length, values.length);
+        this.nextToken = nextToken;
+        this.values = values;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Nullable
+    String getNextToken() {
+        return nextToken;
+    }
+
+    double[] values() {
+        return values;
+    }
+
+    int offset() {
+        return offset;
+    }
+
+    int length() {
+        return length;
+    }
+}
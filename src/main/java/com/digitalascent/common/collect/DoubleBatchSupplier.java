@@ -0,0 +1,36 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import javax.annotation.Nullable;
+
+/**
+ * Supplies batches of double values; the primitive specialization of {@link BatchSupplier}.
+ *
+ * @see ExtraStreams#batchLoadingDoubleStream(DoubleBatchSupplier)
+ */
+@FunctionalInterface
+public interface DoubleBatchSupplier {
+    /**
+     * Retrieve next batch of values
+     *
+     * @param nextBatchToken Token to request next batch of data (may be null)
+     * @return DoubleBatch object representing retrieved batch; use DoubleBatch.emptyBatch() to represent empty batch; must not be null
+     */
+    DoubleBatch nextBatch(@Nullable String nextBatchToken);
+}
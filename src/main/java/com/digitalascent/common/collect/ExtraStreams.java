@@ -18,35 +18,45 @@ package com.digitalascent.common.collect;
 
 
 import com.digitalascent.common.base.StaticUtilityClass;
-import com.digitalascent.common.concurrent.ExtraThreads;
-import com.google.common.base.Throwables;
+import com.digitalascent.common.concurrent.ExtraExecutors;
+import com.google.common.base.Ticker;
 import com.google.common.base.Verify;
 import com.google.common.collect.Iterators;
-import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.errorprone.annotations.MustBeClosed;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Spliterator;
 import java.util.Spliterators;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+import static com.digitalascent.common.base.LambdaCheckedExceptionRethrowers.rethrowingRunnable;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.base.Preconditions.checkState;
-import static com.google.common.base.Verify.verify;
 
 public final class ExtraStreams {
+    private static final int MERGE_BATCH_SIZE = 256;
 
     /**
      * Returns a stream over the provided enumeration
@@ -63,6 +73,208 @@ public final class ExtraStreams {
                 Spliterators.spliteratorUnknownSize( Iterators.forEnumeration(enumeration), Spliterator.ORDERED), false );
     }
 
+    /**
+     * Returns a stream over the lines of the provided (uncompressed) file, read via memory-mapping.  The stream splits
+     * on line boundaries, such that <code>.parallel()</code> processes regions of the file concurrently.
+     * <p>
+     * Lines are decoded, per split, into a reused buffer: each CharSequence is only valid until the next line is
+     * supplied to the same pipeline stage; use <code>toString()</code> to retain a line.  Line terminators ('\n'
+     * or "\r\n") are excluded.  The file is held open until the stream is closed.
+     *
+     * @param file    file to read
+     * @param charset charset of the file
+     * @return Stream of lines in the file
+     */
+    @MustBeClosed
+    public static Stream<CharSequence> mappedLineStream(Path file, Charset charset) throws IOException {
+        checkNotNull(charset, "charset is required");
+        return mappedStream(file, () -> new MappedLineSpliterator.ReusableLineDecoder(charset));
+    }
+
+    /**
+     * Returns a stream of zero-copy views over the newline-delimited records of the provided (uncompressed) file, read
+     * via memory-mapping.  Each ByteBuffer is a read-only view of the mapped file, excluding the line terminator.
+     * The stream splits on record boundaries, such that <code>.parallel()</code> processes regions of the file concurrently.
+     * The file is held open until the stream is closed.
+     *
+     * @param file file to read
+     * @return Stream of records in the file
+     */
+    @MustBeClosed
+    public static Stream<ByteBuffer> mappedRecordStream(Path file) throws IOException {
+        return mappedStream(file, () -> Function.identity());
+    }
+
+    private static <T> Stream<T> mappedStream(Path file, Supplier<? extends Function<ByteBuffer, T>> recordMapperFactory) throws IOException {
+        checkNotNull(file, "file is required");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return StreamSupport.stream(new MappedLineSpliterator<>(channel, recordMapperFactory, 0, channel.size()), false)
+                    .onClose(rethrowingRunnable(channel::close));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a stream of consecutive chunks of the provided stream's elements, each of the provided size (except
+     * possibly the last).  Chunks are assembled lazily, as they are consumed.  Closing the returned stream closes the
+     * provided stream.
+     *
+     * @param stream stream to chunk
+     * @param size   number of elements per chunk
+     * @param <T>    type of element
+     * @return Stream of chunks
+     */
+    public static <T> Stream<List<T>> chunked(Stream<T> stream, int size) {
+        checkArgument(size > 0, "size must be > 0 : %s", size);
+        return chunked(stream, size, element -> 1);
+    }
+
+    /**
+     * Returns a stream of consecutive chunks of the provided stream's elements, each of (at most) the provided
+     * accumulated weight - e.g. estimated bytes of a bulk request.  A chunk is closed before an element would take it
+     * past the maximum weight; an element that alone exceeds the maximum forms a chunk by itself.  Closing the
+     * returned stream closes the provided stream.
+     *
+     * @param stream        stream to chunk
+     * @param maximumWeight maximum total weight of a chunk
+     * @param weigher       weight of an element; must be non-negative
+     * @param <T>           type of element
+     * @return Stream of chunks
+     */
+    public static <T> Stream<List<T>> chunked(Stream<T> stream, long maximumWeight, ToLongFunction<? super T> weigher) {
+        checkNotNull(stream, "stream is required");
+        checkArgument(maximumWeight > 0, "maximumWeight must be > 0 : %s", maximumWeight);
+        checkNotNull(weigher, "weigher is required");
+        return StreamSupport.stream(new ChunkingSpliterator<>(stream.spliterator(), maximumWeight, weigher), false)
+                .onClose(stream::close);
+    }
+
+    /**
+     * Returns a stream of the results of applying the provided function to the provided stream's elements on the
+     * provided executor, with up to <code>parallelism</code> applications in flight, in the order of the provided
+     * stream.  Useful for bulk API calls, e.g. <code>mapAsync(chunked(items, 500), client::bulkWrite, 8, executor)</code>.
+     * <p>
+     * Results that complete out of order are held until their predecessors complete, so at most
+     * <code>parallelism</code> results are buffered.  A failure of any application is propagated as soon as it
+     * occurs, cancelling those still in flight; closing the returned stream likewise cancels them, and closes the
+     * provided stream.
+     *
+     * @param stream      stream of elements to map
+     * @param mapper      function to apply to each element
+     * @param parallelism maximum number of applications in flight
+     * @param executor    executor to apply the function on
+     * @param <T>         type of element
+     * @param <R>         type of mapped element
+     * @return Stream of mapped elements, in order
+     */
+    public static <T, R> Stream<R> mapAsync(Stream<T> stream, Function<? super T, ? extends R> mapper, int parallelism, Executor executor) {
+        checkNotNull(stream, "stream is required");
+        checkArgument(parallelism > 0, "parallelism must be > 0 : %s", parallelism);
+        AsyncMappingSpliterator<T, R> spliterator = new AsyncMappingSpliterator<>(stream.spliterator(), mapper, parallelism, executor);
+        return StreamSupport.stream(spliterator, false)
+                .onClose(spliterator::cancel)
+                .onClose(stream::close);
+    }
+
+    /**
+     * Returns a stream of the elements of the provided stream with distinct keys, keeping the first element for each
+     * key; see {@link #distinctBy(Stream, ToLongFunction, DistinctStrategy, DistinctStatistics)}.
+     *
+     * @param stream       stream to filter
+     * @param keyExtractor 64-bit key of an element
+     * @param strategy     how keys are remembered
+     * @param <T>          type of element
+     * @return Stream of the elements with distinct keys
+     */
+    public static <T> Stream<T> distinctBy(Stream<T> stream, ToLongFunction<? super T> keyExtractor, DistinctStrategy strategy) {
+        return distinctBy(stream, keyExtractor, strategy, new DistinctStatistics());
+    }
+
+    /**
+     * Returns a stream of the elements of the provided stream with distinct keys, keeping the first element for each
+     * key.  Unlike {@link Stream#distinct()}, which holds every element in a <code>HashSet</code>, only 64-bit keys are
+     * remembered - exactly, in a primitive hash set (optionally off-heap), or approximately, in a fixed-size Bloom
+     * filter; see {@link DistinctStrategy}.
+     * <p>
+     * Keys are typically numeric IDs; other keys can be reduced to a 64-bit hash, e.g.
+     * <code>Hashing.murmur3_128().hashUnencodedChars(element.getName()).asLong()</code>, at the risk of (rare) hash
+     * collisions.  The number of elements filtered and memory allocated are recorded in the provided statistics.
+     * Closing the returned stream closes the provided stream.
+     *
+     * @param stream       stream to filter
+     * @param keyExtractor 64-bit key of an element
+     * @param strategy     how keys are remembered
+     * @param statistics   statistics to record filtering and memory use in
+     * @param <T>          type of element
+     * @return Stream of the elements with distinct keys
+     */
+    public static <T> Stream<T> distinctBy(Stream<T> stream, ToLongFunction<? super T> keyExtractor, DistinctStrategy strategy,
+                                           DistinctStatistics statistics) {
+        checkNotNull(stream, "stream is required");
+        checkNotNull(strategy, "strategy is required");
+        return StreamSupport.stream(new DistinctSpliterator<>(stream.spliterator(), keyExtractor, strategy.newKeyFilter(), statistics), false)
+                .onClose(stream::close);
+    }
+
+    /**
+     * Returns a stream that merges the provided individually sorted streams into a single sorted stream, e.g. to merge
+     * sorted listings or log files; see {@link #mergeSorted(Comparator, List, PrefetchPolicy, Executor)}.  Each
+     * stream is prefetched on the shared executor, a couple of batches ahead of the merge.
+     *
+     * @param comparator comparator the provided streams are sorted by
+     * @param streams    streams to merge, each sorted by the comparator
+     * @param <T>        type of element
+     * @return sorted Stream of the elements of all provided streams
+     */
+    public static <T> Stream<T> mergeSorted(Comparator<? super T> comparator, List<? extends Stream<? extends T>> streams) {
+        return mergeSorted(comparator, streams, PrefetchPolicy.fixed(2), DefaultBatchLoadingExecutorHolder.EXECUTOR);
+    }
+
+    /**
+     * Returns a stream that merges the provided individually sorted streams into a single sorted stream, using a
+     * binary heap over the head element of each stream - unlike <code>concat(...).sorted()</code>, which buffers all
+     * elements.  Elements that compare equal are emitted in the order of the provided streams.
+     * <p>
+     * Each stream is <i>asynchronously</i> prefetched on the provided executor, in batches of
+     * {@value #MERGE_BATCH_SIZE} elements governed by the prefetch policy, so that one slow stream doesn't stall the
+     * others; memory is bounded by the prefetch depth of each stream.  Fetches are short tasks, so the executor needn't
+     * have a thread per stream.  Closing the returned stream cancels prefetching and closes the provided streams.
+     *
+     * @param comparator     comparator the provided streams are sorted by
+     * @param streams        streams to merge, each sorted by the comparator
+     * @param prefetchPolicy governs how many batches of each stream are loaded ahead of the merge
+     * @param executor       executor to prefetch the streams on
+     * @param <T>            type of element
+     * @return sorted Stream of the elements of all provided streams
+     */
+    public static <T> Stream<T> mergeSorted(Comparator<? super T> comparator, List<? extends Stream<? extends T>> streams,
+                                            PrefetchPolicy<? super T> prefetchPolicy, Executor executor) {
+        checkNotNull(comparator, "comparator is required");
+        checkNotNull(streams, "streams is required");
+        checkNotNull(prefetchPolicy, "prefetchPolicy is required");
+        checkNotNull(executor, "executor is required");
+
+        List<Stream<T>> prefetchedStreams = new ArrayList<>(streams.size());
+        List<Spliterator<T>> sources = new ArrayList<>(streams.size());
+        for (Stream<? extends T> stream : streams) {
+            checkNotNull(stream, "streams must not contain null");
+            Stream<T> prefetchedStream = queuedStream(new IteratorBatchSupplier<T>(stream.iterator(), MERGE_BATCH_SIZE),
+                    prefetchPolicy, null, null, executor, FlatteningSpliterator::new)
+                    .onClose(stream::close);
+            prefetchedStreams.add(prefetchedStream);
+            sources.add(prefetchedStream.spliterator());
+        }
+
+        Stream<T> merged = StreamSupport.stream(new MergingSpliterator<>(sources, comparator), false);
+        for (Stream<T> prefetchedStream : prefetchedStreams) {
+            merged = merged.onClose(prefetchedStream::close);
+        }
+        return merged;
+    }
+
     /**
      * Create a stream that synchronously lazy-loads batches of elements from the provided supplier.
      * Example usage:
@@ -80,77 +292,360 @@ public final class ExtraStreams {
      * @return Stream of elements that are lazy-loaded in batches from the provided supplier
      */
     public static <T> Stream<T> batchLoadingStream(BatchSupplier<T> batchSupplier) {
+        return batchStream(batchSupplier, null);
+    }
+
+    /**
+     * Create a stream that synchronously lazy-loads batches of elements from the provided supplier, reporting the
+     * latency and size of each fetch to the provided listener; as fetches are synchronous, the consumer is blocked for
+     * the duration of each.
+     *
+     * @param batchSupplier the supplier that provides batches to expose in the stream
+     * @param listener      listener to report metrics to
+     * @param <T>           type of element
+     * @return Stream of elements that are lazy-loaded in batches from the provided supplier
+     */
+    public static <T> Stream<T> batchLoadingStream(BatchSupplier<T> batchSupplier, BatchStreamListener listener) {
+        checkNotNull(listener, "listener is required");
+        return batchStream(batchSupplier, listener);
+    }
+
+    private static <T> Stream<T> batchStream(BatchSupplier<T> batchSupplier, @Nullable BatchStreamListener listener) {
+        checkNotNull(batchSupplier, "batchSupplier is required");
+
+        Spliterator<Iterable<T>> batches = Spliterators.spliteratorUnknownSize(new BatchIterator<>(batchSupplier, listener), Spliterator.ORDERED | Spliterator.IMMUTABLE);
+
+        // flatten lazily, rather than via flatMap, so short-circuiting operations don't fetch more batches than required
+        return StreamSupport.stream(new FlatteningSpliterator<>(batches), false);
+    }
+
+    /**
+     * Create a stream that synchronously lazy-loads batches of elements from the provided supplier, starting from the
+     * first batch, and saves its position to the provided store at (at least) the provided interval and when the
+     * stream is closed.  The checkpoint is cleared once the stream has been fully consumed.
+     * <p>
+     * A checkpoint is the token of the batch being consumed and the number of its elements consumed, where an element
+     * is consumed once the downstream pipeline has processed it; use
+     * {@link #resumableBatchLoadingStream(BatchSupplier, BatchCheckpointStore, Duration)} to continue from it.
+     *
+     * @param batchSupplier      the supplier that provides batches to expose in the stream
+     * @param checkpointStore    store to save checkpoints to
+     * @param checkpointInterval minimum time between checkpoints; zero checkpoints after every element
+     * @param <T>                type of element
+     * @return Stream of elements that are lazy-loaded in batches from the provided supplier
+     */
+    public static <T> Stream<T> checkpointingBatchLoadingStream(BatchSupplier<T> batchSupplier, BatchCheckpointStore checkpointStore,
+                                                                Duration checkpointInterval) {
+        return checkpointingStream(batchSupplier, checkpointStore, null, checkpointInterval);
+    }
+
+    /**
+     * Create a stream that synchronously lazy-loads batches of elements from the provided supplier, resuming from the
+     * checkpoint in the provided store (if any) such that batches completed by a previous stream are not fetched
+     * again, and elements already consumed from the checkpointed batch are skipped.  The stream continues to
+     * checkpoint as per {@link #checkpointingBatchLoadingStream(BatchSupplier, BatchCheckpointStore, Duration)}.
+     *
+     * @param batchSupplier      the supplier that provides batches to expose in the stream
+     * @param checkpointStore    store to resume from, and save checkpoints to
+     * @param checkpointInterval minimum time between checkpoints; zero checkpoints after every element
+     * @param <T>                type of element
+     * @return Stream of elements that are lazy-loaded in batches from the provided supplier
+     */
+    public static <T> Stream<T> resumableBatchLoadingStream(BatchSupplier<T> batchSupplier, BatchCheckpointStore checkpointStore,
+                                                            Duration checkpointInterval) {
+        checkNotNull(checkpointStore, "checkpointStore is required");
+        return checkpointingStream(batchSupplier, checkpointStore, checkpointStore.load(), checkpointInterval);
+    }
+
+    private static <T> Stream<T> checkpointingStream(BatchSupplier<T> batchSupplier, BatchCheckpointStore checkpointStore,
+                                                     @Nullable BatchCheckpoint resumeFrom, Duration checkpointInterval) {
+        checkNotNull(checkpointInterval, "checkpointInterval is required");
+        checkArgument(!checkpointInterval.isNegative(), "checkpointInterval must be >= 0 : %s", checkpointInterval);
+
+        CheckpointingSpliterator<T> spliterator = new CheckpointingSpliterator<>(batchSupplier, checkpointStore, resumeFrom,
+                checkpointInterval.toNanos(), Ticker.systemTicker());
+        return StreamSupport.stream(spliterator, false)
+                .onClose(spliterator::checkpoint);
+    }
+
+    /**
+     * Create a LongStream that synchronously lazy-loads batches of long values from the provided supplier, without boxing.
+     *
+     * @param batchSupplier the supplier that provides batches to expose in the stream
+     * @return LongStream of values that are lazy-loaded in batches from the provided supplier
+     * @see #batchLoadingStream(BatchSupplier)
+     */
+    public static LongStream batchLoadingLongStream(LongBatchSupplier batchSupplier) {
         checkNotNull(batchSupplier, "batchSupplier is required");
+        return StreamSupport.longStream(new PrimitiveBatchSpliterators.OfLong(batchSupplier), false);
+    }
 
-        Stream<Iterable<T>> batchStream = StreamSupport.stream(
-                Spliterators.spliteratorUnknownSize(new BatchIterator<>(batchSupplier), Spliterator.ORDERED | Spliterator.IMMUTABLE),
-                false);
+    /**
+     * Create a IntStream that synchronously lazy-loads batches of int values from the provided supplier, without boxing.
+     *
+     * @param batchSupplier the supplier that provides batches to expose in the stream
+     * @return IntStream of values that are lazy-loaded in batches from the provided supplier
+     * @see #batchLoadingStream(BatchSupplier)
+     */
+    public static IntStream batchLoadingIntStream(IntBatchSupplier batchSupplier) {
+        checkNotNull(batchSupplier, "batchSupplier is required");
+        return StreamSupport.intStream(new PrimitiveBatchSpliterators.OfInt(batchSupplier), false);
+    }
 
-        return batchStream.flatMap(i -> StreamSupport.stream(i.spliterator(), false));
+    /**
+     * Create a DoubleStream that synchronously lazy-loads batches of double values from the provided supplier, without boxing.
+     *
+     * @param batchSupplier the supplier that provides batches to expose in the stream
+     * @return DoubleStream of values that are lazy-loaded in batches from the provided supplier
+     * @see #batchLoadingStream(BatchSupplier)
+     */
+    public static DoubleStream batchLoadingDoubleStream(DoubleBatchSupplier batchSupplier) {
+        checkNotNull(batchSupplier, "batchSupplier is required");
+        return StreamSupport.doubleStream(new PrimitiveBatchSpliterators.OfDouble(batchSupplier), false);
     }
 
     /**
      * Create a stream that <i>asynchronously</i> lazy-loads batches of elements from the provided supplier.
      * Useful for suppliers that load batches from API calls to overlap producer network/processing latency
      * with consumption of batches.
+     * <p>
+     * Batches are loaded on a shared executor that uses virtual threads where the runtime supports them (Java 21+),
+     * and otherwise a cached pool of daemon threads; see {@link ExtraExecutors#newThreadPerTaskExecutor(String)}.
      *
      * @param batchSupplier the supplier that provides batches to expose in the stream
      * @param <T>           type of element
-     * @param queueSize     number of batches to allow to be queued before blocking the supplier from adding more batches
+     * @param queueSize     number of batches to allow to be queued before pausing the supplier from loading more batches
      * @return Stream of elements that are <i>asynchronously</i> lazy-loaded in batches from the provided supplier
      */
     public static <T> Stream<T> queuedBatchLoadingStream(BatchSupplier<T> batchSupplier, int queueSize) {
-        checkNotNull(batchSupplier, "batchSupplier is required");
+        return queuedBatchLoadingStream(batchSupplier, queueSize, DefaultBatchLoadingExecutorHolder.EXECUTOR);
+    }
+
+    /**
+     * Create a stream that <i>asynchronously</i> lazy-loads batches of elements from the provided supplier, loading
+     * batches on the provided executor.
+     *
+     * @param batchSupplier the supplier that provides batches to expose in the stream
+     * @param <T>           type of element
+     * @param queueSize     number of batches to allow to be queued before pausing the supplier from loading more batches
+     * @param executor      executor to fetch batches on
+     * @return Stream of elements that are <i>asynchronously</i> lazy-loaded in batches from the provided supplier
+     * @see #queuedBatchLoadingStream(BatchSupplier, PrefetchPolicy, Executor)
+     */
+    public static <T> Stream<T> queuedBatchLoadingStream(BatchSupplier<T> batchSupplier, int queueSize, Executor executor) {
         checkArgument(queueSize > 0, "queueSize must be > 0 : %s", queueSize);
+        return queuedBatchLoadingStream(batchSupplier, PrefetchPolicy.fixed(queueSize), executor);
+    }
 
-        BlockingQueue<Iterable<T>> queue = new ArrayBlockingQueue<>(queueSize);
-        Iterable<T> poison = new ArrayList<>();
+    /**
+     * Create a stream that <i>asynchronously</i> lazy-loads batches of elements from the provided supplier, prefetching
+     * batches as governed by the provided policy, e.g. <code>PrefetchPolicy.adaptive(2, 32)</code> to size the
+     * prefetch depth to the observed fetch latency.  Batches are loaded on the shared executor.
+     *
+     * @param batchSupplier  the supplier that provides batches to expose in the stream
+     * @param <T>            type of element
+     * @param prefetchPolicy governs how many batches are loaded ahead of the consumer
+     * @return Stream of elements that are <i>asynchronously</i> lazy-loaded in batches from the provided supplier
+     */
+    public static <T> Stream<T> queuedBatchLoadingStream(BatchSupplier<T> batchSupplier, PrefetchPolicy<? super T> prefetchPolicy) {
+        return queuedBatchLoadingStream(batchSupplier, prefetchPolicy, DefaultBatchLoadingExecutorHolder.EXECUTOR);
+    }
 
-        // load batches in a separate thread, governed by the queue size (blocking when queue is full)
-        // only use a single thread as batches are chained (the result of one batch has the token to load the next batch)
-        ExecutorService executorService = Executors.newFixedThreadPool(1, ExtraThreads.defaultThreadFactory("ExtraStreams.batchLoadingStream:" + batchSupplier.getClass()));
-        Future<?> batchProducerFuture = executorService.submit(() -> {
-            try {
-                Batch<T> currentBatch = Batch.emptyBatch();
-                String lastToken = null;
-                while (true) {
-                    currentBatch = batchSupplier.nextBatch(currentBatch.getNextToken());
-
-                    verify(currentBatch != null, "Null batch returned from %s", batchSupplier.getClass());
-                    checkState(lastToken == null || !Objects.equals(lastToken, currentBatch.getNextToken()), "Received the same batch token '%s' for two batches, aborting", lastToken);
-
-                    Uninterruptibles.putUninterruptibly(queue, currentBatch.getIterable());
-                    lastToken = currentBatch.getNextToken();
-                    if (lastToken == null) {
-                        break;
-                    }
-                }
-            } finally {
-                // always poison the queue, notifying consumer that this producer is finished, even in the event of an exception here (which will propagate to consumer)
-                Uninterruptibles.putUninterruptibly(queue, poison);
-            }
-        });
-        executorService.shutdown();
+    /**
+     * Create a stream that <i>asynchronously</i> lazy-loads batches of elements from the provided supplier, loading
+     * batches on the provided executor and prefetching batches as governed by the provided policy.
+     * <p>
+     * Each batch is fetched by a separate task, submitted to the executor while the queue has room; no executor thread
+     * is held while the queue is full, or between fetches, so a bounded executor can serve any number of open streams
+     * (their fetches wait for a free thread).  If the executor rejects the first fetch the RejectedExecutionException
+     * is thrown from this method; if it rejects a later fetch, the stream fails with it once the batches already
+     * queued have been consumed.
+     * <p>
+     * Closing the stream (e.g. via try-with-resources) cancels the producer, interrupting any in-flight batch fetch
+     * and discarding queued batches. A stream that is abandoned without being closed stops its producer once the
+     * stream has been garbage collected.
+     *
+     * @param batchSupplier  the supplier that provides batches to expose in the stream
+     * @param <T>            type of element
+     * @param prefetchPolicy governs how many batches are loaded ahead of the consumer
+     * @param executor       executor to fetch batches on
+     * @return Stream of elements that are <i>asynchronously</i> lazy-loaded in batches from the provided supplier
+     */
+    public static <T> Stream<T> queuedBatchLoadingStream(BatchSupplier<T> batchSupplier, PrefetchPolicy<? super T> prefetchPolicy, Executor executor) {
+        return queuedStream(batchSupplier, prefetchPolicy, null, null, executor, FlatteningSpliterator::new);
+    }
+
+    /**
+     * Create a stream that <i>asynchronously</i> lazy-loads batches of elements from the provided supplier on the
+     * provided executor, as per {@link #queuedBatchLoadingStream(BatchSupplier, PrefetchPolicy, Executor)}, reporting
+     * metrics to the provided listener: the latency and size of each fetch, the queue depth, and how long the producer
+     * and consumer each block on the queue.  E.g. pass a {@link BatchStreamStatistics} to tell whether a slow stream is
+     * producer-bound or consumer-bound.
+     *
+     * @param batchSupplier  the supplier that provides batches to expose in the stream
+     * @param prefetchPolicy governs how many batches are loaded ahead of the consumer
+     * @param listener       listener to report metrics to
+     * @param executor       executor to fetch batches on
+     * @param <T>            type of element
+     * @return Stream of elements that are <i>asynchronously</i> lazy-loaded in batches from the provided supplier
+     */
+    public static <T> Stream<T> queuedBatchLoadingStream(BatchSupplier<T> batchSupplier, PrefetchPolicy<? super T> prefetchPolicy,
+                                                         BatchStreamListener listener, Executor executor) {
+        checkNotNull(listener, "listener is required");
+        return queuedStream(batchSupplier, prefetchPolicy, null, listener, executor, FlatteningSpliterator::new);
+    }
+
+    /**
+     * Create a stream that <i>asynchronously</i> lazy-loads batches of elements from the provided supplier on the
+     * shared executor, spilling batches to disk once the in-memory queue is full; see
+     * {@link #queuedBatchLoadingStream(BatchSupplier, PrefetchPolicy, SpillPolicy, Executor)}.
+     *
+     * @param batchSupplier  the supplier that provides batches to expose in the stream
+     * @param prefetchPolicy governs how many batches are held in memory ahead of the consumer
+     * @param spillPolicy    governs how batches that don't fit in memory are spilled to disk
+     * @param <T>            type of element
+     * @return Stream of elements that are <i>asynchronously</i> lazy-loaded in batches from the provided supplier
+     */
+    public static <T> Stream<T> queuedBatchLoadingStream(BatchSupplier<T> batchSupplier, PrefetchPolicy<? super T> prefetchPolicy,
+                                                         SpillPolicy<T> spillPolicy) {
+        return queuedBatchLoadingStream(batchSupplier, prefetchPolicy, spillPolicy, DefaultBatchLoadingExecutorHolder.EXECUTOR);
+    }
+
+    /**
+     * Create a stream that <i>asynchronously</i> lazy-loads batches of elements from the provided supplier on the
+     * provided executor, without ever blocking the producer: once the in-memory queue is full (as per the prefetch
+     * policy), batches are serialized - optionally compressed - to a temporary spill file and read back, in order, as
+     * the consumer catches up.  Useful for sources whose cursors time out if not advanced.
+     * <p>
+     * The spill file is deleted once the stream has been fully consumed or is closed.
+     *
+     * @param batchSupplier  the supplier that provides batches to expose in the stream
+     * @param prefetchPolicy governs how many batches are held in memory ahead of the consumer
+     * @param spillPolicy    governs how batches that don't fit in memory are spilled to disk
+     * @param executor       executor to fetch batches on
+     * @param <T>            type of element
+     * @return Stream of elements that are <i>asynchronously</i> lazy-loaded in batches from the provided supplier
+     */
+    public static <T> Stream<T> queuedBatchLoadingStream(BatchSupplier<T> batchSupplier, PrefetchPolicy<? super T> prefetchPolicy,
+                                                         SpillPolicy<T> spillPolicy, Executor executor) {
+        checkNotNull(spillPolicy, "spillPolicy is required");
+        return queuedStream(batchSupplier, prefetchPolicy, spillPolicy, null, executor, FlatteningSpliterator::new);
+    }
 
-        // pull each batch off the queue and return a stream for it
-        return queueStream(queue, poison, batchProducerFuture).flatMap(batch -> StreamSupport.stream(batch.spliterator(), false));
+    /**
+     * Create a <i>parallel</i> stream that <i>asynchronously</i> lazy-loads batches of elements from the provided
+     * supplier on the shared executor, for CPU-heavy processing of paginated data.  Fetched batches - and pieces of
+     * large batches - are split off to fork-join workers while prefetching continues in the background.  Encounter
+     * order is preserved for ordered operations (e.g. <code>forEachOrdered</code>, <code>collect</code>).
+     * <p>
+     * Closing the stream cancels the producer, as per {@link #queuedBatchLoadingStream(BatchSupplier, PrefetchPolicy, Executor)}.
+     *
+     * @param batchSupplier  the supplier that provides batches to expose in the stream
+     * @param prefetchPolicy governs how many batches are loaded ahead of the consumer
+     * @param <T>            type of element
+     * @return parallel Stream of elements that are <i>asynchronously</i> lazy-loaded in batches from the provided supplier
+     */
+    public static <T> Stream<T> parallelBatchLoadingStream(BatchSupplier<T> batchSupplier, PrefetchPolicy<? super T> prefetchPolicy) {
+        return parallelBatchLoadingStream(batchSupplier, prefetchPolicy, DefaultBatchLoadingExecutorHolder.EXECUTOR);
     }
 
     /**
-     * Creates a stream supplying elements from the provided BlockingQueue, terminating when the <b>poison</b> element is encountered
+     * Create a <i>parallel</i> stream that <i>asynchronously</i> lazy-loads batches of elements from the provided
+     * supplier on the provided executor; see {@link #parallelBatchLoadingStream(BatchSupplier, PrefetchPolicy)}.
      *
-     * @param queue          the queue to extract elements from
-     * @param poison         element that terminates the stream
-     * @param producerFuture future for the producer of elements consumed by this queue, used to propagate exceptions
+     * @param batchSupplier  the supplier that provides batches to expose in the stream
+     * @param prefetchPolicy governs how many batches are loaded ahead of the consumer
+     * @param executor       executor to fetch batches on
+     * @param <T>            type of element
+     * @return parallel Stream of elements that are <i>asynchronously</i> lazy-loaded in batches from the provided supplier
      */
-    private static <T> Stream<T> queueStream(BlockingQueue<T> queue, T poison, Future<?> producerFuture) {
-        return StreamSupport.stream(new QueueSpliterator<>(queue, poison, producerFuture), false);
+    public static <T> Stream<T> parallelBatchLoadingStream(BatchSupplier<T> batchSupplier, PrefetchPolicy<? super T> prefetchPolicy, Executor executor) {
+        return queuedStream(batchSupplier, prefetchPolicy, null, null, executor, SplittingBatchSpliterator::new).parallel();
+    }
+
+    private static <T> Stream<T> queuedStream(BatchSupplier<T> batchSupplier, PrefetchPolicy<? super T> prefetchPolicy,
+                                              @Nullable SpillPolicy<T> spillPolicy, @Nullable BatchStreamListener listener, Executor executor,
+                                              Function<Spliterator<Iterable<T>>, Spliterator<T>> flattener) {
+        checkNotNull(batchSupplier, "batchSupplier is required");
+        checkNotNull(prefetchPolicy, "prefetchPolicy is required");
+        checkNotNull(executor, "executor is required");
+
+        PrefetchQueue<T> queue = new PrefetchQueue<>(prefetchPolicy, spillPolicy == null ? null : new SpillFile<>(spillPolicy));
+        Iterable<T> poison = new ArrayList<>();
+        Object consumerToken = new Object();
+
+        // load batches asynchronously, one fetch task at a time as batches are chained (the result of one batch has the
+        // token to load the next batch), governed by the prefetch policy (pausing while the queue is full)
+        BatchProducer<T> batchProducer = new BatchProducer<>(batchSupplier, queue, poison, consumerToken, listener);
+        batchProducer.start(executor);
+
+        // pull each batch off the queue, flattening it element by element; closing the stream stops the producer
+        QueueSpliterator<T> batches = new QueueSpliterator<>(queue, poison, batchProducer.completion(), consumerToken, listener);
+        return StreamSupport.stream(flattener.apply(batches), false)
+                .onClose(() -> {
+                    batchProducer.cancel();
+                    queue.clear();
+                    queue.add(poison);
+                    queue.close();
+                });
+    }
+
+    /**
+     * Create a stream that <i>asynchronously</i> lazy-loads batches from several independent segments - e.g. parallel
+     * table scans, sharded listings or date partitions - each paged through its own chain of batch tokens.  Up to
+     * <code>parallelism</code> segments are loaded concurrently, on the shared executor, each prefetching up to
+     * <code>parallelism</code> batches.
+     *
+     * @param segmentSuppliers suppliers that provide the batches of each segment
+     * @param parallelism      maximum number of segments to load concurrently
+     * @param order            whether batches are streamed in segment order, or as soon as they are loaded
+     * @param <T>              type of element
+     * @return Stream of elements that are <i>asynchronously</i> lazy-loaded in batches from the provided segments
+     */
+    public static <T> Stream<T> segmentedBatchLoadingStream(List<? extends BatchSupplier<T>> segmentSuppliers, int parallelism, SegmentOrder order) {
+        checkArgument(parallelism > 0, "parallelism must be > 0 : %s", parallelism);
+        return segmentedBatchLoadingStream(segmentSuppliers, parallelism, order, PrefetchPolicy.fixed(parallelism),
+                DefaultBatchLoadingExecutorHolder.EXECUTOR);
+    }
+
+    /**
+     * Create a stream that <i>asynchronously</i> lazy-loads batches from several independent segments, loading up to
+     * <code>parallelism</code> segments concurrently on the provided executor.
+     * <p>
+     * Unordered, the prefetch policy governs a queue shared by all segments; in segment order, it governs the queue of
+     * each segment (only <code>parallelism</code> of which are being loaded at a time).  An exception from any
+     * segment is propagated once the consumer reaches the end of that segment, and no further segments are started.
+     * Closing the stream cancels all segments.
+     *
+     * @param segmentSuppliers suppliers that provide the batches of each segment
+     * @param parallelism      maximum number of segments to load concurrently
+     * @param order            whether batches are streamed in segment order, or as soon as they are loaded
+     * @param prefetchPolicy   governs how many batches are loaded ahead of the consumer
+     * @param executor         executor to fetch the segments' batches on
+     * @param <T>              type of element
+     * @return Stream of elements that are <i>asynchronously</i> lazy-loaded in batches from the provided segments
+     */
+    public static <T> Stream<T> segmentedBatchLoadingStream(List<? extends BatchSupplier<T>> segmentSuppliers, int parallelism, SegmentOrder order,
+                                                            PrefetchPolicy<? super T> prefetchPolicy, Executor executor) {
+        SegmentedBatchProducer<T> producer = new SegmentedBatchProducer<>(segmentSuppliers, order, prefetchPolicy);
+        Spliterator<Iterable<T>> batches = producer.spliterator();
+        producer.start(executor, parallelism);
+
+        return StreamSupport.stream(new FlatteningSpliterator<>(batches), false)
+                .onClose(producer::cancel);
     }
 
     private ExtraStreams() {
         StaticUtilityClass.throwCannotInstantiateError( getClass() );
     }
 
+    /**
+     * Lazily creates the shared executor for queued batch loading
+     */
+    private static final class DefaultBatchLoadingExecutorHolder {
+        static final ExecutorService EXECUTOR = ExtraExecutors.newThreadPerTaskExecutor("ExtraStreams.batchLoadingStream");
+    }
+
     /**
      * Iterator over batches of elements.
      *
@@ -158,13 +653,16 @@ public final class ExtraStreams {
      */
     private static class BatchIterator<T> implements Iterator<Iterable<T>> {
         private final BatchSupplier<T> batchSupplier;
+        @Nullable
+        private final BatchStreamListener listener;
         private Batch<T> currentBatch;
 
         @Nullable
         private String lastToken;
 
-        BatchIterator(BatchSupplier<T> batchSupplier) {
+        BatchIterator(BatchSupplier<T> batchSupplier, @Nullable BatchStreamListener listener) {
             this.batchSupplier = checkNotNull(batchSupplier);
+            this.listener = listener;
         }
 
         @Override
@@ -175,8 +673,14 @@ public final class ExtraStreams {
 
         @Override
         public Iterable<T> next() {
+            long fetchStartNanos = listener == null ? 0 : System.nanoTime();
             currentBatch = batchSupplier.nextBatch(currentBatch == null ? null : currentBatch.getNextToken());
             Verify.verify(currentBatch != null, "Null batch returned from %s", batchSupplier.getClass());
+            if (listener != null) {
+                long fetchNanos = System.nanoTime() - fetchStartNanos;
+                listener.batchFetched(fetchNanos, currentBatch.knownSize());
+                listener.consumerBlocked(fetchNanos);
+            }
             if (lastToken != null && Objects.equals(lastToken, currentBatch.getNextToken())) {
                 throw new IllegalStateException(String.format("Received the same batch token '%s' for two batches, aborting", lastToken));
             }
@@ -186,57 +690,4 @@ public final class ExtraStreams {
             return currentBatch.getIterable();
         }
     }
-
-    /**
-     * Spliterator that pulls elements from the provided queue.  Blocks waiting for elements from the queue, exiting
-     * when the provided 'poison' element is encountered.  Exceptions from the async producer are propagated.
-     *
-     * @param <T> type of elements in the queue
-     */
-    private static class QueueSpliterator<T> implements Spliterator<T> {
-        private final BlockingQueue<T> queue;
-        private final T poison;
-        private final Future<?> producerFuture;
-
-        QueueSpliterator(BlockingQueue<T> queue, T poison, Future<?> producerFuture) {
-            this.queue = checkNotNull(queue, "queue is required");
-            this.poison = checkNotNull(poison, "poison is required");
-            this.producerFuture = checkNotNull(producerFuture, "producerFuture is required");
-        }
-
-        @Override
-        public int characteristics() {
-            return Spliterator.NONNULL | Spliterator.ORDERED | Spliterator.IMMUTABLE;
-        }
-
-        @Override
-        public long estimateSize() {
-            return Long.MAX_VALUE;
-        }
-
-        @Override
-        public boolean tryAdvance(final Consumer<? super T> action) {
-            final T next = Uninterruptibles.takeUninterruptibly(queue);
-            if (next == poison) {
-                try {
-                    // obtain result from producer, used to propagate any producer exceptions
-                    Uninterruptibles.getUninterruptibly(producerFuture);
-                } catch (ExecutionException e) {
-                    // propagate producer exception
-                    Throwables.throwIfUnchecked(e.getCause());
-                    throw new RuntimeException(e.getCause());
-                }
-                return false;
-            }
-            action.accept(next);
-            return true;
-        }
-
-        @Nullable
-        @Override
-        public Spliterator<T> trySplit() {
-            return null;
-        }
-
-    }
 }
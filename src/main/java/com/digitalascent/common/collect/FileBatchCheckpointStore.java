@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Stores a checkpoint in a local properties file.  Checkpoints are written to a sibling temporary file and atomically
+ * moved into place, such that a crash mid-write leaves the previous checkpoint intact.
+ */
+public final class FileBatchCheckpointStore implements BatchCheckpointStore {
+    private static final String TOKEN = "batchToken";
+    private static final String OFFSET = "offset";
+    private static final String FINISHED = "finished";
+
+    private final Path file;
+    private final Path tempFile;
+
+    public FileBatchCheckpointStore(Path file) {
+        this.file = checkNotNull(file, "file is required").toAbsolutePath();
+        this.tempFile = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+    }
+
+    @Nullable
+    @Override
+    public BatchCheckpoint load() {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read checkpoint from " + file, e);
+        }
+        if (Boolean.parseBoolean(properties.getProperty(FINISHED))) {
+            return BatchCheckpoint.finished();
+        }
+        return new BatchCheckpoint(properties.getProperty(TOKEN), Long.parseLong(properties.getProperty(OFFSET, "0")));
+    }
+
+    @Override
+    public void save(BatchCheckpoint checkpoint) {
+        checkNotNull(checkpoint, "checkpoint is required");
+        Properties properties = new Properties();
+        if (checkpoint.getBatchToken() != null) {
+            properties.setProperty(TOKEN, checkpoint.getBatchToken());
+        }
+        properties.setProperty(OFFSET, String.valueOf(checkpoint.getOffset()));
+        if (checkpoint.isFinished()) {
+            properties.setProperty(FINISHED, "true");
+        }
+        try {
+            try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write checkpoint to " + file, e);
+        }
+    }
+
+    @Override
+    public void clear() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to delete checkpoint " + file, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileBatchCheckpointStore{" +
+                "file=" + file +
+                '}';
+    }
+}
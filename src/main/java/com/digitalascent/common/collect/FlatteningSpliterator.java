@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Spliterator that flattens a spliterator of batches into their elements, advancing through the current batch one
+ * element at a time and only requesting the next batch once the current batch is exhausted.
+ * <p>
+ * Unlike <code>flatMap</code> - which on Java 8 pushes each inner stream through the pipeline in its entirety
+ * (JDK-8075939) - short-circuiting operations such as <code>limit</code> and <code>findFirst</code> stop pulling
+ * elements, and loading batches, as soon as they are satisfied.
+ *
+ * @param <T> type of elements in the batches
+ */
+final class FlatteningSpliterator<T> implements Spliterator<T> {
+    private final Spliterator<? extends Iterable<? extends T>> batches;
+    private Iterator<? extends T> currentBatch = Collections.emptyIterator();
+
+    FlatteningSpliterator(Spliterator<? extends Iterable<? extends T>> batches) {
+        this.batches = checkNotNull(batches, "batches is required");
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        checkNotNull(action, "action is required");
+        while (!currentBatch.hasNext()) {
+            if (!batches.tryAdvance(batch -> currentBatch = batch.iterator())) {
+                return false;
+            }
+        }
+        action.accept(currentBatch.next());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        checkNotNull(action, "action is required");
+        currentBatch.forEachRemaining(action);
+        currentBatch = Collections.emptyIterator();
+        batches.forEachRemaining(batch -> batch.forEach(action));
+    }
+
+    @Nullable
+    @Override
+    public Spliterator<T> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Adapts an iterator to a batch supplier, handing out up to <code>batchSize</code> elements per batch; used to prefetch
+ * plain streams through the queued batch loading machinery.
+ *
+ * @param <T> type of elements
+ */
+final class IteratorBatchSupplier<T> implements BatchSupplier<T> {
+    private final Iterator<? extends T> iterator;
+    private final int batchSize;
+    private long batchCount;
+
+    IteratorBatchSupplier(Iterator<? extends T> iterator, int batchSize) {
+        this.iterator = checkNotNull(iterator, "iterator is required");
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public Batch<T> nextBatch(@Nullable String nextBatchToken) {
+        List<T> elements = new ArrayList<>(batchSize);
+        while (elements.size() < batchSize && iterator.hasNext()) {
+            elements.add(iterator.next());
+        }
+
+        // tokens only need to differ from one batch to the next
+        return new Batch<>(iterator.hasNext() ? Long.toString(++batchCount) : null, elements);
+    }
+}
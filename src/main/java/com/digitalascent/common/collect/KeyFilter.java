@@ -0,0 +1,34 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+/**
+ * Set of 64-bit keys that remembers which keys have been seen, as used by
+ * {@link ExtraStreams#distinctBy(java.util.stream.Stream, java.util.function.ToLongFunction, DistinctStrategy)}.
+ */
+interface KeyFilter {
+    /**
+     * @return true if the key has not been seen before; false if it has (or, for approximate filters, may have) been seen
+     */
+    boolean add(long key);
+
+    /**
+     * @return bytes allocated to remember keys
+     */
+    long memoryBytes();
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Open-addressing (linear probing) hash set of primitive longs, stored on the heap or in direct (off-heap) buffers.
+ * Slots are held in segments of up to 2^20 longs, so that large sets don't require a single huge array; the zero key
+ * - which marks an empty slot - is tracked separately.  Not thread-safe.
+ */
+final class LongHashSet implements KeyFilter {
+    private static final int SEGMENT_SHIFT = 20;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+    private static final int MINIMUM_CAPACITY = 16;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    private static final double LOAD_FACTOR = 0.75;
+
+    private final boolean offHeap;
+    private LongBuffer[] segments;
+    private int mask;
+    private int threshold;
+    private int occupied;
+    private boolean containsZero;
+
+    LongHashSet(long expectedKeys, boolean offHeap) {
+        this.offHeap = offHeap;
+        long capacity = MINIMUM_CAPACITY;
+        while (capacity < MAXIMUM_CAPACITY && capacity * LOAD_FACTOR < expectedKeys) {
+            capacity <<= 1;
+        }
+        allocate((int) capacity);
+    }
+
+    @Override
+    public boolean add(long key) {
+        if (key == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            return true;
+        }
+
+        int index = (int) mix(key) & mask;
+        long slot;
+        while ((slot = get(index)) != 0) {
+            if (slot == key) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        put(index, key);
+        if (++occupied > threshold) {
+            grow();
+        }
+        return true;
+    }
+
+    long size() {
+        return occupied + (containsZero ? 1 : 0);
+    }
+
+    @Override
+    public long memoryBytes() {
+        return (mask + 1L) * Long.BYTES;
+    }
+
+    private void grow() {
+        checkState(mask + 1 < MAXIMUM_CAPACITY, "Exceeded the maximum capacity of %s keys; use an approximate strategy", threshold);
+        LongBuffer[] oldSegments = segments;
+        allocate((mask + 1) << 1);
+        for (LongBuffer oldSegment : oldSegments) {
+            for (int i = 0; i < oldSegment.capacity(); i++) {
+                long key = oldSegment.get(i);
+                if (key != 0) {
+                    int index = (int) mix(key) & mask;
+                    while (get(index) != 0) {
+                        index = (index + 1) & mask;
+                    }
+                    put(index, key);
+                }
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        int segmentSize = Math.min(capacity, SEGMENT_MASK + 1);
+        LongBuffer[] newSegments = new LongBuffer[capacity / segmentSize];
+        for (int i = 0; i < newSegments.length; i++) {
+            newSegments[i] = offHeap
+                    ? ByteBuffer.allocateDirect(segmentSize * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer()
+                    : LongBuffer.allocate(segmentSize);
+        }
+        segments = newSegments;
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private long get(int index) {
+        return segments[index >>> SEGMENT_SHIFT].get(index & SEGMENT_MASK);
+    }
+
+    private void put(int index, long key) {
+        segments[index >>> SEGMENT_SHIFT].put(index & SEGMENT_MASK, key);
+    }
+
+    /**
+     * MurmurHash3 finalizer; spreads keys that differ only in high bits (e.g. sequential IDs shifted left)
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.digitalascent.common.collect;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Spliterator over the newline-delimited records of a file, read through memory-mapped windows.  Splits on line
+ * boundaries, so each split covers whole records and can be traversed independently; records are passed to a
+ * per-split mapper (created on first traversal) as read-only ByteBuffer views of the mapped file, excluding the
+ * line terminator ('\n' or "\r\n").
+ *
+ * @param <T> type of element produced from each record
+ */
+final class MappedLineSpliterator<T> implements Spliterator<T> {
+    private static final long MIN_SPLIT_SIZE = 1 << 20;
+    private static final int INITIAL_WINDOW_SIZE = 64 << 20;
+    private static final int SCAN_BUFFER_SIZE = 8192;
+
+    private final FileChannel channel;
+    private final Supplier<? extends Function<ByteBuffer, T>> recordMapperFactory;
+    private long position;
+    private final long end;
+
+    @Nullable
+    private Function<ByteBuffer, T> recordMapper;
+    @Nullable
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int windowSize = INITIAL_WINDOW_SIZE;
+
+    MappedLineSpliterator(FileChannel channel, Supplier<? extends Function<ByteBuffer, T>> recordMapperFactory, long position, long end) {
+        this.channel = checkNotNull(channel, "channel is required");
+        this.recordMapperFactory = checkNotNull(recordMapperFactory, "recordMapperFactory is required");
+        this.position = position;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (position >= end) {
+            return false;
+        }
+        if (recordMapper == null) {
+            recordMapper = recordMapperFactory.get();
+        }
+        try {
+            action.accept(recordMapper.apply(nextRecord()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Spliterator<T> trySplit() {
+        if (recordMapper != null || end - position < MIN_SPLIT_SIZE) {
+            return null;
+        }
+        try {
+            long splitPosition = findNextLineStart(position + (end - position) / 2);
+            if (splitPosition <= position || splitPosition >= end) {
+                return null;
+            }
+            Spliterator<T> prefix = new MappedLineSpliterator<>(channel, recordMapperFactory, position, splitPosition);
+            position = splitPosition;
+            return prefix;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        // bytes remaining; an upper bound on the number of records
+        return end - position;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+    }
+
+    private ByteBuffer nextRecord() throws IOException {
+        while (true) {
+            if (window == null || position >= windowStart + window.limit()) {
+                mapWindow();
+            }
+            int offset = (int) (position - windowStart);
+            int limit = window.limit();
+            for (int i = offset; i < limit; i++) {
+                if (window.get(i) == '\n') {
+                    position = windowStart + i + 1;
+                    return slice(offset, i);
+                }
+            }
+
+            if (windowStart + limit >= end) {
+                // final record without a terminator
+                position = end;
+                return slice(offset, limit);
+            }
+
+            // record spans the window boundary; remap starting at the record, growing the window if the record
+            // is larger than the window
+            if (offset == 0) {
+                if (windowSize == Integer.MAX_VALUE) {
+                    throw new IOException("Record at offset " + position + " exceeds maximum length");
+                }
+                windowSize = (int) Math.min(Integer.MAX_VALUE, windowSize * 2L);
+            }
+            window = null;
+        }
+    }
+
+    private void mapWindow() throws IOException {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, end - position));
+    }
+
+    private ByteBuffer slice(int from, int to) {
+        if (to > from && window.get(to - 1) == '\r') {
+            to--;
+        }
+        ByteBuffer view = window.duplicate();
+        // cast for Java 8 compatibility (covariant overrides added in Java 9)
+        ((Buffer) view).position(from);
+        ((Buffer) view).limit(to);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return position following the first '\n' at or after the provided position, or end if there is none
+     */
+    private long findNextLineStart(long from) throws IOException {
+        ByteBuffer scanBuffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long scanPosition = from;
+        while (scanPosition < end) {
+            ((Buffer) scanBuffer).clear();
+            int read = channel.read(scanBuffer, scanPosition);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read && scanPosition + i < end; i++) {
+                if (scanBuffer.get(i) == '\n') {
+                    return scanPosition + i + 1;
+                }
+            }
+            scanPosition += read;
+        }
+        return end;
+    }
+
+    /**
+     * Decodes records into a CharBuffer that is reused for each record.
+     */
+    static final class ReusableLineDecoder implements Function<ByteBuffer, CharSequence> {
+        private final CharsetDecoder decoder;
+        private CharBuffer chars = CharBuffer.allocate(256);
+
+        ReusableLineDecoder(Charset charset) {
+            this.decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        @Override
+        public CharSequence apply(ByteBuffer bytes) {
+            int required = (int) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte());
+            if (chars.capacity() < required) {
+                chars = CharBuffer.allocate(Math.max(required, chars.capacity() * 2));
+            }
+            ((Buffer) chars).clear();
+            decoder.reset();
+            decoder.decode(bytes, chars, true);
+            decoder.flush(chars);
+            ((Buffer) chars).flip();
+            return chars;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import javax.annotation.Nullable;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Spliterator that merges individually sorted source spliterators into a single sorted sequence, using a binary
+ * min-heap over the head element of each source.  Only the head of each source is held, and each element costs
+ * O(log k) comparisons for k sources.  Elements that compare equal are emitted in source order.
+ *
+ * @param <T> type of elements
+ */
+final class MergingSpliterator<T> implements Spliterator<T> {
+    private final List<? extends Spliterator<? extends T>> sources;
+    private final Comparator<? super T> comparator;
+    private final Head<T>[] heap;
+    private int heapSize = -1;
+
+    @SuppressWarnings("unchecked")
+    MergingSpliterator(List<? extends Spliterator<? extends T>> sources, Comparator<? super T> comparator) {
+        this.sources = checkNotNull(sources, "sources is required");
+        this.comparator = checkNotNull(comparator, "comparator is required");
+        this.heap = (Head<T>[]) new Head<?>[sources.size()];
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (heapSize < 0) {
+            initialize();
+        }
+        if (heapSize == 0) {
+            return false;
+        }
+
+        Head<T> top = heap[0];
+        T element = top.element;
+        if (!sources.get(top.source).tryAdvance(top)) {
+            // source exhausted; replace the top with the last head
+            top.element = null;
+            heap[0] = heap[--heapSize];
+            heap[heapSize] = null;
+        }
+        if (heapSize > 0) {
+            siftDown(0);
+        }
+        action.accept(element);
+        return true;
+    }
+
+    private void initialize() {
+        heapSize = 0;
+        for (int i = 0; i < sources.size(); i++) {
+            Head<T> head = new Head<>(i);
+            if (sources.get(i).tryAdvance(head)) {
+                heap[heapSize++] = head;
+            }
+        }
+        for (int i = (heapSize >>> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    private void siftDown(int index) {
+        Head<T> head = heap[index];
+        int half = heapSize >>> 1;
+        while (index < half) {
+            int child = (index << 1) + 1;
+            int right = child + 1;
+            if (right < heapSize && less(heap[right], heap[child])) {
+                child = right;
+            }
+            if (!less(heap[child], head)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = head;
+    }
+
+    private boolean less(Head<T> a, Head<T> b) {
+        int result = comparator.compare(a.element, b.element);
+        return result < 0 || (result == 0 && a.source < b.source);
+    }
+
+    @Nullable
+    @Override
+    public Spliterator<T> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = Math.max(heapSize, 0);
+        for (Spliterator<? extends T> source : sources) {
+            size += source.estimateSize();
+            if (size < 0) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED | Spliterator.SORTED;
+    }
+
+    @Override
+    public Comparator<? super T> getComparator() {
+        return comparator;
+    }
+
+    /**
+     * Current head element of a source.
+     */
+    private static final class Head<T> implements Consumer<T> {
+        private final int source;
+        @Nullable
+        private T element;
+
+        Head(int source) {
+            this.source = source;
+        }
+
+        @Override
+        public void accept(T element) {
+            this.element = element;
+        }
+    }
+}
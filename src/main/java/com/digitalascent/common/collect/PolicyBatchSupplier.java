@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decorates a BatchSupplier with the rate limit and retries of a {@link BatchFetchPolicy}.
+ *
+ * @param <T> type of elements in the batches
+ */
+final class PolicyBatchSupplier<T> implements BatchSupplier<T> {
+    private final BatchSupplier<T> delegate;
+    private final BatchFetchPolicy policy;
+    private final BatchFetchStatistics statistics;
+
+    PolicyBatchSupplier(BatchSupplier<T> delegate, BatchFetchPolicy policy, BatchFetchStatistics statistics) {
+        this.delegate = checkNotNull(delegate, "delegate is required");
+        this.policy = checkNotNull(policy, "policy is required");
+        this.statistics = checkNotNull(statistics, "statistics is required");
+    }
+
+    @Override
+    public Batch<T> nextBatch(@Nullable String nextBatchToken) {
+        for (int attempt = 1; ; attempt++) {
+            statistics.recordThrottleWait(policy.acquireFetchPermit());
+            statistics.recordFetch();
+            try {
+                return delegate.nextBatch(nextBatchToken);
+            } catch (RuntimeException e) {
+                if (attempt >= policy.maxAttempts() || !policy.isRetryable(e)) {
+                    statistics.recordFailedFetch();
+                    throw e;
+                }
+                long backoffNanos = policy.backoffNanos(attempt - 1);
+                statistics.recordRetry(backoffNanos);
+                try {
+                    TimeUnit.NANOSECONDS.sleep(backoffNanos);
+                } catch (InterruptedException interrupted) {
+                    // cancelled while backing off; give up on this batch
+                    Thread.currentThread().interrupt();
+                    statistics.recordFailedFetch();
+                    e.addSuppressed(interrupted);
+                    throw e;
+                }
+            }
+        }
+    }
+}
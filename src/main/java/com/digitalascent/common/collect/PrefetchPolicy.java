@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import javax.annotation.Nullable;
+import java.util.function.ToLongFunction;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Governs how many batches {@link ExtraStreams#queuedBatchLoadingStream(BatchSupplier, PrefetchPolicy)} loads ahead
+ * of the consumer.
+ * <p>
+ * A fixed policy prefetches a constant number of batches.  An adaptive policy measures how long each
+ * {@link BatchSupplier#nextBatch(String)} call takes and how long the consumer takes to drain each batch, and
+ * prefetches enough batches to cover the fetch latency - <code>ceil(fetch time / drain time) + 1</code> - within
+ * [minimumBatches, maximumBatches].  Either may additionally be bounded by the total weight (e.g. element count or
+ * estimated bytes) of queued batches; a single batch is always admitted to an empty queue, regardless of weight.
+ * <p>
+ * Instances are immutable; the with* methods return modified copies.
+ *
+ * @param <T> type of elements weighed by the policy
+ */
+public final class PrefetchPolicy<T> {
+    private static final double SMOOTHING = 0.25;
+
+    private final int minimumBatches;
+    private final int maximumBatches;
+    private final long maximumWeight;
+    @Nullable
+    private final ToLongFunction<? super T> elementWeigher;
+
+    /**
+     * Prefetches (at most) the provided number of batches
+     *
+     * @param batches number of batches to allow to be queued before blocking the supplier from loading more batches
+     */
+    public static <T> PrefetchPolicy<T> fixed(int batches) {
+        checkArgument(batches > 0, "batches > 0 : %s", batches);
+        return new PrefetchPolicy<>(batches, batches, 0, null);
+    }
+
+    /**
+     * Adapts the number of prefetched batches to the observed fetch latency and consumer drain rate, starting at the
+     * minimum
+     *
+     * @param minimumBatches lower bound on the number of batches to prefetch
+     * @param maximumBatches upper bound on the number of batches to prefetch
+     */
+    public static <T> PrefetchPolicy<T> adaptive(int minimumBatches, int maximumBatches) {
+        checkArgument(minimumBatches > 0, "minimumBatches > 0 : %s", minimumBatches);
+        checkArgument(minimumBatches <= maximumBatches, "minimumBatches <= maximumBatches : %s, %s", minimumBatches, maximumBatches);
+        return new PrefetchPolicy<>(minimumBatches, maximumBatches, 0, null);
+    }
+
+    private PrefetchPolicy(int minimumBatches, int maximumBatches, long maximumWeight, @Nullable ToLongFunction<? super T> elementWeigher) {
+        this.minimumBatches = minimumBatches;
+        this.maximumBatches = maximumBatches;
+        this.maximumWeight = maximumWeight;
+        this.elementWeigher = elementWeigher;
+    }
+
+    /**
+     * Additionally bounds the total number of elements in queued batches
+     */
+    public PrefetchPolicy<T> withMaximumQueuedElements(long maximumElements) {
+        checkArgument(maximumElements > 0, "maximumElements > 0 : %s", maximumElements);
+        return new PrefetchPolicy<>(minimumBatches, maximumBatches, maximumElements, element -> 1);
+    }
+
+    /**
+     * Additionally bounds the total estimated size of queued batches
+     *
+     * @param maximumBytes         upper bound on the estimated size of queued batches
+     * @param elementSizeEstimator estimates the size, in bytes, of an element
+     */
+    public PrefetchPolicy<T> withMaximumQueuedBytes(long maximumBytes, ToLongFunction<? super T> elementSizeEstimator) {
+        checkArgument(maximumBytes > 0, "maximumBytes > 0 : %s", maximumBytes);
+        checkNotNull(elementSizeEstimator, "elementSizeEstimator is required");
+        return new PrefetchPolicy<>(minimumBatches, maximumBatches, maximumBytes, elementSizeEstimator);
+    }
+
+    int initialBatches() {
+        return minimumBatches;
+    }
+
+    boolean isAdaptive() {
+        return minimumBatches < maximumBatches;
+    }
+
+    /**
+     * @return upper bound on the weight of queued batches, or 0 if unbounded
+     */
+    long maximumWeight() {
+        return maximumWeight;
+    }
+
+    long weigh(Iterable<? extends T> batch) {
+        if (elementWeigher == null) {
+            return 0;
+        }
+        long weight = 0;
+        for (T element : batch) {
+            weight += elementWeigher.applyAsLong(element);
+        }
+        return weight;
+    }
+
+    /**
+     * @param averageFetchNanos average time taken to fetch a batch
+     * @param averageDrainNanos average time taken by the consumer to process a batch
+     * @return number of batches to prefetch
+     */
+    int nextBatches(double averageFetchNanos, double averageDrainNanos) {
+        double batchesToCoverFetch = Math.ceil(averageFetchNanos / Math.max(averageDrainNanos, 1)) + 1;
+        return (int) Math.max(minimumBatches, Math.min(maximumBatches, batchesToCoverFetch));
+    }
+
+    static double smooth(double average, long sample) {
+        return average < 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Bounded queue of batches between one or more {@link BatchProducer}s and a {@link QueueSpliterator}, with capacity
+ * governed by a {@link PrefetchPolicy}.  Adaptive policies are fed the producers' fetch times and the consumer's drain
+ * times (the time between taking one batch and asking for the next).
+ * <p>
+ * Producers never wait on the queue: a producer {@link #reserve() reserves} room before fetching a batch, and
+ * {@link #put(Iterable) puts} the fetched batch regardless of capacity.  Without room it stops fetching until
+ * notified by a {@link #addTakeListener(Runnable) take listener}, which runs after each batch the consumer takes.
+ * <p>
+ * With a {@link SpillFile}, there is always room: batches that don't fit in memory are spilled to disk, as are all
+ * batches put while spilled batches remain unread, such that batches are taken in the order put - memory, then spill
+ * file, then any end-of-stream markers added while spilling.
+ *
+ * @param <T> type of elements in the batches
+ */
+final class PrefetchQueue<T> {
+    private static final long MARKER_WEIGHT = -1;
+
+    private final PrefetchPolicy<? super T> policy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Deque<Iterable<T>> batches = new ArrayDeque<>();
+    private final Deque<Long> weights = new ArrayDeque<>();
+    private final Deque<Iterable<T>> afterSpill = new ArrayDeque<>();
+    @Nullable
+    private final SpillFile<T> spillFile;
+    private final List<Runnable> takeListeners = new CopyOnWriteArrayList<>();
+
+    private int capacity;
+    private long weight;
+    private int markers;
+    private int reserved;
+    private double averageFetchNanos = -1;
+    private double averageDrainNanos = -1;
+    private long lastTakeNanos = -1;
+    private int unreadSpills;
+    private int pendingSpills;
+    private long spilledBatches;
+
+    PrefetchQueue(PrefetchPolicy<? super T> policy) {
+        this(policy, null);
+    }
+
+    PrefetchQueue(PrefetchPolicy<? super T> policy, @Nullable SpillFile<T> spillFile) {
+        this.policy = checkNotNull(policy, "policy is required");
+        this.capacity = policy.initialBatches();
+        this.spillFile = spillFile;
+    }
+
+    /**
+     * Reserves room for a batch about to be fetched, if the queue is below its limits; each reservation is followed by
+     * either {@link #put(Iterable)} or {@link #release()}
+     *
+     * @return true if room was reserved
+     */
+    boolean reserve() {
+        if (spillFile != null) {
+            return true;
+        }
+        lock.lock();
+        try {
+            if (!hasRoomForReservation()) {
+                return false;
+            }
+            reserved++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a reservation without putting a batch, e.g. when the fetch failed
+     */
+    void release() {
+        if (spillFile != null) {
+            return;
+        }
+        lock.lock();
+        try {
+            reserved--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a batch into the room reserved for it (or, if spilling, writes it to the spill file)
+     */
+    void put(Iterable<T> batch) {
+        long batchWeight = policy.weigh(batch);
+        if (spillFile != null) {
+            putOrSpill(batch, batchWeight, spillFile);
+            return;
+        }
+        lock.lock();
+        try {
+            reserved--;
+            enqueue(batch, batchWeight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registers an action to run (on the consumer thread) after each batch taken, e.g. to resume a producer waiting
+     * for room
+     */
+    void addTakeListener(Runnable listener) {
+        takeListeners.add(checkNotNull(listener, "listener is required"));
+    }
+
+    /**
+     * Adds the batch regardless of capacity; used for end-of-stream markers
+     */
+    void add(Iterable<T> batch) {
+        lock.lock();
+        try {
+            if (isSpilling()) {
+                afterSpill.addLast(batch);
+                notEmpty.signal();
+            } else {
+                enqueue(batch, MARKER_WEIGHT);
+                markers++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Iterable<T> take() throws InterruptedException {
+        Iterable<T> batch = takeBatch();
+        takeListeners.forEach(Runnable::run);
+        return batch;
+    }
+
+    private Iterable<T> takeBatch() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            if (lastTakeNanos >= 0 && policy.isAdaptive()) {
+                averageDrainNanos = PrefetchPolicy.smooth(averageDrainNanos, System.nanoTime() - lastTakeNanos);
+                adapt();
+            }
+            while (true) {
+                if (!batches.isEmpty()) {
+                    Iterable<T> batch = batches.removeFirst();
+                    long batchWeight = weights.removeFirst();
+                    if (batchWeight == MARKER_WEIGHT) {
+                        markers--;
+                    } else {
+                        weight -= batchWeight;
+                    }
+                    lastTakeNanos = System.nanoTime();
+                    return batch;
+                }
+                if (unreadSpills > 0) {
+                    unreadSpills--;
+                    lastTakeNanos = System.nanoTime();
+                    break;
+                }
+                if (pendingSpills == 0 && !afterSpill.isEmpty()) {
+                    return afterSpill.removeFirst();
+                }
+                notEmpty.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+        // read outside the lock, such that the producer isn't held up; only this (single) consumer reads
+        try {
+            return checkNotNull(spillFile).read();
+        } catch (RuntimeException e) {
+            // the batch remains in the spill file, to be read by the next take
+            lock.lock();
+            try {
+                unreadSpills++;
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    void recordFetch(long fetchNanos) {
+        if (!policy.isAdaptive()) {
+            return;
+        }
+        lock.lock();
+        try {
+            averageFetchNanos = PrefetchPolicy.smooth(averageFetchNanos, fetchNanos);
+            adapt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void clear() {
+        lock.lock();
+        try {
+            batches.clear();
+            weights.clear();
+            markers = 0;
+            afterSpill.clear();
+            unreadSpills = 0;
+            weight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the spill file, if any; called once no more batches will be taken
+     */
+    void close() {
+        if (spillFile != null) {
+            spillFile.close();
+        }
+    }
+
+    /**
+     * @return number of batches queued, in memory or spilled to disk, excluding end-of-stream markers
+     */
+    int depth() {
+        lock.lock();
+        try {
+            return batches.size() - markers + unreadSpills + pendingSpills;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of batches spilled to disk
+     */
+    long spilledBatches() {
+        lock.lock();
+        try {
+            return spilledBatches;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return current number of batches the queue admits
+     */
+    int capacity() {
+        lock.lock();
+        try {
+            return capacity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adapt() {
+        if (averageFetchNanos >= 0 && averageDrainNanos >= 0) {
+            capacity = policy.nextBatches(averageFetchNanos, averageDrainNanos);
+        }
+    }
+
+    private void putOrSpill(Iterable<T> batch, long batchWeight, SpillFile<T> spillFile) {
+        lock.lock();
+        try {
+            if (!isSpilling() && hasRoomFor(batchWeight)) {
+                enqueue(batch, batchWeight);
+                return;
+            }
+            pendingSpills++;
+        } finally {
+            lock.unlock();
+        }
+
+        boolean spilled = false;
+        try {
+            // serialize outside the lock, such that the consumer can continue to take batches from memory
+            spillFile.write(batch);
+            spilled = true;
+        } finally {
+            lock.lock();
+            try {
+                pendingSpills--;
+                if (spilled) {
+                    unreadSpills++;
+                    spilledBatches++;
+                }
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean isSpilling() {
+        return unreadSpills > 0 || pendingSpills > 0;
+    }
+
+    private boolean hasRoomFor(long batchWeight) {
+        if (batches.isEmpty()) {
+            return true;
+        }
+        return batches.size() < capacity
+                && (policy.maximumWeight() == 0 || weight + batchWeight <= policy.maximumWeight());
+    }
+
+    /**
+     * @return true if there is room for a batch yet to be fetched, whose weight is unknown: i.e. the queue is below its limits
+     */
+    private boolean hasRoomForReservation() {
+        if (batches.isEmpty() && reserved == 0) {
+            return true;
+        }
+        return batches.size() + reserved < capacity
+                && (policy.maximumWeight() == 0 || weight < policy.maximumWeight());
+    }
+
+    private void enqueue(Iterable<T> batch, long batchWeight) {
+        batches.addLast(batch);
+        weights.addLast(batchWeight);
+        if (batchWeight != MARKER_WEIGHT) {
+            weight += batchWeight;
+        }
+        notEmpty.signal();
+    }
+}
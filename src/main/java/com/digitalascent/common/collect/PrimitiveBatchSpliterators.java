@@ -0,0 +1,268 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import com.digitalascent.common.base.StaticUtilityClass;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Verify.verify;
+
+/**
+ * Spliterators over the values of chained primitive batches, iterating each batch's array range directly such that
+ * values are never boxed.  Batches are fetched lazily, as values are consumed.
+ */
+final class PrimitiveBatchSpliterators {
+
+    /**
+     * Tracks the token chain across batches
+     */
+    private static final class TokenChain {
+        private final Object batchSupplier;
+        private boolean started;
+        @Nullable
+        private String nextToken;
+
+        TokenChain(Object batchSupplier) {
+            this.batchSupplier = checkNotNull(batchSupplier, "batchSupplier is required");
+        }
+
+        boolean hasNext() {
+            return !started || nextToken != null;
+        }
+
+        @Nullable
+        String nextToken() {
+            return nextToken;
+        }
+
+        void advance(@Nullable Object batch, @Nullable String batchNextToken) {
+            verify(batch != null, "Null batch returned from %s", batchSupplier.getClass());
+            checkState(batchNextToken == null || !Objects.equals(nextToken, batchNextToken),
+                    "Received the same batch token '%s' for two batches, aborting", nextToken);
+            started = true;
+            nextToken = batchNextToken;
+        }
+    }
+
+    static final class OfLong implements Spliterator.OfLong {
+        private final LongBatchSupplier batchSupplier;
+        private final TokenChain tokenChain;
+        private long[] values = new long[0];
+        private int index;
+        private int end;
+
+        OfLong(LongBatchSupplier batchSupplier) {
+            this.batchSupplier = checkNotNull(batchSupplier, "batchSupplier is required");
+            this.tokenChain = new TokenChain(batchSupplier);
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            checkNotNull(action, "action is required");
+            while (index >= end) {
+                if (!nextBatch()) {
+                    return false;
+                }
+            }
+            action.accept(values[index++]);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            checkNotNull(action, "action is required");
+            do {
+                long[] batchValues = values;
+                for (int i = index; i < end; i++) {
+                    action.accept(batchValues[i]);
+                }
+                index = end;
+            } while (nextBatch());
+        }
+
+        private boolean nextBatch() {
+            if (!tokenChain.hasNext()) {
+                return false;
+            }
+            LongBatch batch = batchSupplier.nextBatch(tokenChain.nextToken());
+            tokenChain.advance(batch, batch == null ? null : batch.getNextToken());
+            values = batch.values();
+            index = batch.offset();
+            end = batch.offset() + batch.length();
+            return true;
+        }
+
+        @Nullable
+        @Override
+        public Spliterator.OfLong trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.IMMUTABLE;
+        }
+    }
+
+    static final class OfInt implements Spliterator.OfInt {
+        private final IntBatchSupplier batchSupplier;
+        private final TokenChain tokenChain;
+        private int[] values = new int[0];
+        private int index;
+        private int end;
+
+        OfInt(IntBatchSupplier batchSupplier) {
+            this.batchSupplier = checkNotNull(batchSupplier, "batchSupplier is required");
+            this.tokenChain = new TokenChain(batchSupplier);
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            checkNotNull(action, "action is required");
+            while (index >= end) {
+                if (!nextBatch()) {
+                    return false;
+                }
+            }
+            action.accept(values[index++]);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            checkNotNull(action, "action is required");
+            do {
+                int[] batchValues = values;
+                for (int i = index; i < end; i++) {
+                    action.accept(batchValues[i]);
+                }
+                index = end;
+            } while (nextBatch());
+        }
+
+        private boolean nextBatch() {
+            if (!tokenChain.hasNext()) {
+                return false;
+            }
+            IntBatch batch = batchSupplier.nextBatch(tokenChain.nextToken());
+            tokenChain.advance(batch, batch == null ? null : batch.getNextToken());
+            values = batch.values();
+            index = batch.offset();
+            end = batch.offset() + batch.length();
+            return true;
+        }
+
+        @Nullable
+        @Override
+        public Spliterator.OfInt trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.IMMUTABLE;
+        }
+    }
+
+    static final class OfDouble implements Spliterator.OfDouble {
+        private final DoubleBatchSupplier batchSupplier;
+        private final TokenChain tokenChain;
+        private double[] values = new double[0];
+        private int index;
+        private int end;
+
+        OfDouble(DoubleBatchSupplier batchSupplier) {
+            this.batchSupplier = checkNotNull(batchSupplier, "batchSupplier is required");
+            this.tokenChain = new TokenChain(batchSupplier);
+        }
+
+        @Override
+        public boolean tryAdvance(DoubleConsumer action) {
+            checkNotNull(action, "action is required");
+            while (index >= end) {
+                if (!nextBatch()) {
+                    return false;
+                }
+            }
+            action.accept(values[index++]);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(DoubleConsumer action) {
+            checkNotNull(action, "action is required");
+            do {
+                double[] batchValues = values;
+                for (int i = index; i < end; i++) {
+                    action.accept(batchValues[i]);
+                }
+                index = end;
+            } while (nextBatch());
+        }
+
+        private boolean nextBatch() {
+            if (!tokenChain.hasNext()) {
+                return false;
+            }
+            DoubleBatch batch = batchSupplier.nextBatch(tokenChain.nextToken());
+            tokenChain.advance(batch, batch == null ? null : batch.getNextToken());
+            values = batch.values();
+            index = batch.offset();
+            end = batch.offset() + batch.length();
+            return true;
+        }
+
+        @Nullable
+        @Override
+        public Spliterator.OfDouble trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.IMMUTABLE;
+        }
+    }
+
+    private PrimitiveBatchSpliterators() {
+        StaticUtilityClass.throwCannotInstantiateError(getClass());
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.digitalascent.common.collect;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import javax.annotation.Nullable;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Spliterator that pulls batches from the provided queue.  Blocks waiting for elements from the queue, exiting
+ * when the provided 'poison' element is encountered.  Exceptions from the async producer are propagated.
+ * <p>
+ * Holds the producer's consumer token; once this spliterator is unreachable the producer detects abandonment and stops.
+ * Taking a batch makes room in the queue, resuming a producer that paused for room.
+ *
+ * @param <T> type of elements in the batches
+ */
+final class QueueSpliterator<T> implements Spliterator<Iterable<T>> {
+    private final PrefetchQueue<T> queue;
+    private final Iterable<T> poison;
+    private final Future<?> producerFuture;
+    @Nullable
+    private final BatchStreamListener listener;
+
+    @SuppressWarnings({"unused", "FieldCanBeLocal"})
+    private final Object consumerToken;
+
+    QueueSpliterator(PrefetchQueue<T> queue, Iterable<T> poison, Future<?> producerFuture, Object consumerToken,
+                     @Nullable BatchStreamListener listener) {
+        this.queue = checkNotNull(queue, "queue is required");
+        this.poison = checkNotNull(poison, "poison is required");
+        this.producerFuture = checkNotNull(producerFuture, "producerFuture is required");
+        this.consumerToken = checkNotNull(consumerToken, "consumerToken is required");
+        this.listener = listener;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.NONNULL | Spliterator.ORDERED | Spliterator.IMMUTABLE;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super Iterable<T>> action) {
+        final Iterable<T> next = listener == null ? takeUninterruptibly(queue) : takeReporting(listener);
+        if (next == poison) {
+            // leave the poison in place for any subsequent calls
+            queue.add(poison);
+            queue.close();
+            awaitProducer(producerFuture);
+            return false;
+        }
+        action.accept(next);
+        return true;
+    }
+
+    private Iterable<T> takeReporting(BatchStreamListener listener) {
+        long takeStartNanos = System.nanoTime();
+        Iterable<T> next = takeUninterruptibly(queue);
+        listener.consumerBlocked(System.nanoTime() - takeStartNanos);
+        if (next != poison) {
+            listener.queueDepthChanged(queue.depth());
+        }
+        return next;
+    }
+
+    @Nullable
+    @Override
+    public Spliterator<Iterable<T>> trySplit() {
+        return null;
+    }
+
+    /**
+     * Waits for the producer to finish, propagating any producer exception
+     */
+    static void awaitProducer(Future<?> producerFuture) {
+        try {
+            Uninterruptibles.getUninterruptibly(producerFuture);
+        } catch (ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    static <T> Iterable<T> takeUninterruptibly(PrefetchQueue<T> queue) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
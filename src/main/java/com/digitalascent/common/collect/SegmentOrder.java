@@ -0,0 +1,36 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+/**
+ * How batches from concurrently-loaded segments are merged into a single stream
+ *
+ * @see ExtraStreams#segmentedBatchLoadingStream(java.util.List, int, SegmentOrder)
+ */
+public enum SegmentOrder {
+    /**
+     * Batches are streamed as soon as they are loaded, interleaving segments
+     */
+    UNORDERED,
+
+    /**
+     * All batches of a segment are streamed before those of the next segment; later segments are loaded ahead, up to
+     * the prefetch limit of each segment
+     */
+    SEGMENT_ORDER
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Loads N independent segments, each a chain of batches, with a {@link BatchProducer} per segment; at most
+ * 'parallelism' segments are loaded concurrently, started in segment order as earlier segments finish.  No executor
+ * thread is held between fetches.
+ * <p>
+ * Unordered, all segments share a queue; in segment order, each segment has its own queue, drained in turn.  Each
+ * segment poisons its queue with a distinct marker when it finishes, such that the consumer can propagate that
+ * segment's exception.  A failed segment prevents further segments from being started.
+ *
+ * @param <T> type of elements in the batches
+ */
+final class SegmentedBatchProducer<T> {
+    private final List<PrefetchQueue<T>> queues;
+    private final List<BatchProducer<T>> producers = new ArrayList<>();
+    private final Map<Iterable<T>, Integer> segmentMarkers = new IdentityHashMap<>();
+    private final AtomicInteger nextSegment = new AtomicInteger();
+    private volatile boolean stopped;
+
+    // held only until handed to the consumer, such that producers can detect an abandoned consumer
+    @Nullable
+    private Object consumerToken = new Object();
+
+    SegmentedBatchProducer(List<? extends BatchSupplier<T>> segmentSuppliers, SegmentOrder order, PrefetchPolicy<? super T> prefetchPolicy) {
+        checkNotNull(segmentSuppliers, "segmentSuppliers is required");
+        checkArgument(!segmentSuppliers.isEmpty(), "segmentSuppliers must not be empty");
+        checkNotNull(order, "order is required");
+        checkNotNull(prefetchPolicy, "prefetchPolicy is required");
+
+        ImmutableList.Builder<PrefetchQueue<T>> queuesBuilder = ImmutableList.builder();
+        int queueCount = order == SegmentOrder.SEGMENT_ORDER ? segmentSuppliers.size() : 1;
+        for (int i = 0; i < queueCount; i++) {
+            queuesBuilder.add(new PrefetchQueue<>(prefetchPolicy));
+        }
+        queues = queuesBuilder.build();
+
+        for (int segment = 0; segment < segmentSuppliers.size(); segment++) {
+            Iterable<T> marker = new ArrayList<>();
+            segmentMarkers.put(marker, segment);
+            BatchProducer<T> producer = new BatchProducer<>(checkNotNull(segmentSuppliers.get(segment), "segment supplier is required"),
+                    queueFor(segment), marker, consumerToken);
+            producers.add(producer);
+        }
+    }
+
+    /**
+     * @throws RejectedExecutionException if the executor rejects the first fetch of any of the first segments
+     */
+    void start(Executor executor, int parallelism) {
+        checkNotNull(executor, "executor is required");
+        checkArgument(parallelism > 0, "parallelism > 0 : %s", parallelism);
+        for (int i = 0; i < Math.min(parallelism, producers.size()); i++) {
+            startNextSegment(executor);
+        }
+    }
+
+    /**
+     * Stops all segments, interrupting in-flight fetches, and discards queued batches
+     */
+    void cancel() {
+        stopped = true;
+        producers.forEach(BatchProducer::cancel);
+        queues.forEach(PrefetchQueue::clear);
+        // release a consumer blocked on a queue
+        segmentMarkers.forEach((marker, segment) -> queueFor(segment).add(marker));
+    }
+
+    /**
+     * @return the consumer of the segment queues; may only be called once
+     */
+    Spliterator<Iterable<T>> spliterator() {
+        Object token = checkNotNull(consumerToken, "spliterator already created");
+        consumerToken = null;
+        return new SegmentSpliterator(token);
+    }
+
+    /**
+     * Starts the next segment, if any, which in turn starts the one after it once finished
+     */
+    private void startNextSegment(Executor executor) {
+        int segment = nextSegment.getAndIncrement();
+        if (stopped || segment >= producers.size()) {
+            return;
+        }
+        BatchProducer<T> producer = producers.get(segment);
+        producer.completion().whenComplete((result, failure) -> {
+            if (failure == null) {
+                startNextSegment(executor);
+            } else {
+                stopped = true;
+            }
+        });
+        producer.start(executor);
+    }
+
+    private PrefetchQueue<T> queueFor(int segment) {
+        return queues.get(Math.min(segment, queues.size() - 1));
+    }
+
+    /**
+     * Pulls batches from the segment queues until every segment's marker has been seen
+     */
+    private final class SegmentSpliterator implements Spliterator<Iterable<T>> {
+        @SuppressWarnings({"unused", "FieldCanBeLocal"})
+        private final Object consumerToken;
+        private int finishedSegments;
+
+        SegmentSpliterator(Object consumerToken) {
+            this.consumerToken = consumerToken;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Iterable<T>> action) {
+            while (finishedSegments < producers.size()) {
+                // unordered, all segments share queue 0; in segment order, segments finish (from here) in turn
+                Iterable<T> next = QueueSpliterator.takeUninterruptibly(queueFor(finishedSegments));
+                Integer segment = segmentMarkers.get(next);
+                if (segment == null) {
+                    action.accept(next);
+                    return true;
+                }
+                QueueSpliterator.awaitProducer(producers.get(segment).completion());
+                finishedSegments++;
+            }
+            return false;
+        }
+
+        @Nullable
+        @Override
+        public Spliterator<Iterable<T>> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.NONNULL | Spliterator.IMMUTABLE | (queues.size() > 1 ? Spliterator.ORDERED : 0);
+        }
+    }
+}
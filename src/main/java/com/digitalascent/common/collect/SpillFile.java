@@ -0,0 +1,223 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import com.digitalascent.common.io.CompressionCodec;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Append-only file of serialized batches, read back in the order written.  Each record is a length-prefixed payload
+ * holding the element count followed by the elements, compressed as a whole if a codec is configured.
+ * <p>
+ * There is a single writer (the producer) and a single reader (the consumer); the caller ensures a record is only
+ * read once it has been completely written.  Each side has its own channel, such that an interrupt (which closes the
+ * interrupted thread's channel) doesn't affect the other side; a closed channel is reopened on next use.  Once the
+ * reader has caught up, the next write truncates the file rather than appending to it.  The file is created on first
+ * write and deleted when closed.
+ *
+ * @param <T> type of elements in the batches
+ */
+final class SpillFile<T> {
+    private static final int LENGTH_PREFIX_SIZE = 4;
+
+    private final ElementSerializer<T> serializer;
+    @Nullable
+    private final CompressionCodec compressionCodec;
+    private final Path directory;
+
+    @Nullable
+    private Path file;
+    @Nullable
+    private FileChannel writeChannel;
+    @Nullable
+    private FileChannel readChannel;
+    // guarded by this; positions are only published once a record has been completely written or read
+    private long writePosition;
+    private long readPosition;
+    private boolean closed;
+
+    SpillFile(SpillPolicy<T> policy) {
+        checkNotNull(policy, "policy is required");
+        this.serializer = policy.serializer();
+        this.compressionCodec = policy.compressionCodec();
+        this.directory = policy.directory();
+    }
+
+    void write(Iterable<T> batch) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            bytes.write(new byte[LENGTH_PREFIX_SIZE]);
+            OutputStream payload = compressionCodec == null ? bytes : compressionCodec.compressingStream(bytes);
+            List<T> elements = new ArrayList<>();
+            batch.forEach(elements::add);
+            try (DataOutputStream output = new DataOutputStream(payload)) {
+                output.writeInt(elements.size());
+                for (T element : elements) {
+                    serializer.write(element, output);
+                }
+            }
+
+            ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+            record.putInt(0, record.remaining() - LENGTH_PREFIX_SIZE);
+            FileChannel fileChannel = writeChannel();
+            long position = startWrite(fileChannel);
+            while (record.hasRemaining()) {
+                position += fileChannel.write(record, position);
+            }
+            // a failed write leaves writePosition as it was; the partial record is overwritten by the next write
+            endWrite(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to spill batch to " + directory, e);
+        }
+    }
+
+    List<T> read() {
+        try {
+            FileChannel fileChannel = readChannel();
+            long position = readPosition();
+            ByteBuffer lengthPrefix = ByteBuffer.allocate(LENGTH_PREFIX_SIZE);
+            position = readFully(fileChannel, lengthPrefix, position);
+            ByteBuffer payload = ByteBuffer.allocate(lengthPrefix.getInt(0));
+            position = readFully(fileChannel, payload, position);
+
+            List<T> elements;
+            InputStream bytes = new ByteArrayInputStream(payload.array());
+            try (DataInputStream input = new DataInputStream(compressionCodec == null ? bytes : compressionCodec.decompressingStream(bytes))) {
+                int count = input.readInt();
+                elements = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    elements.add(serializer.read(input));
+                }
+            }
+            // a failed read or decode leaves readPosition as it was, such that the record can be read again
+            endRead(position);
+            return elements;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read spilled batch from " + directory, e);
+        }
+    }
+
+    /**
+     * Closes and deletes the spill file, if created; subsequent reads and writes fail
+     */
+    synchronized void close() {
+        closed = true;
+        try {
+            closeQuietly(writeChannel);
+            closeQuietly(readChannel);
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to delete spill file " + file, e);
+        }
+    }
+
+    private static void closeQuietly(@Nullable FileChannel fileChannel) {
+        if (fileChannel != null) {
+            try {
+                fileChannel.close();
+            } catch (IOException ignored) {
+                // the file is deleted regardless
+            }
+        }
+    }
+
+    private static long readFully(FileChannel fileChannel, ByteBuffer buffer, long position) throws IOException {
+        long nextPosition = position;
+        while (buffer.hasRemaining()) {
+            int read = fileChannel.read(buffer, nextPosition);
+            if (read < 0) {
+                throw new IOException("Unexpected end of spill file at " + nextPosition);
+            }
+            nextPosition += read;
+        }
+        ((Buffer) buffer).flip();
+        return nextPosition;
+    }
+
+    private synchronized long startWrite(FileChannel fileChannel) throws IOException {
+        if (writePosition > 0 && readPosition == writePosition) {
+            // everything written has been read; reclaim the space rather than growing the file
+            fileChannel.truncate(0);
+            writePosition = 0;
+            readPosition = 0;
+        }
+        return writePosition;
+    }
+
+    private synchronized void endWrite(long position) {
+        writePosition = position;
+    }
+
+    private synchronized long readPosition() {
+        return readPosition;
+    }
+
+    private synchronized void endRead(long position) {
+        readPosition = position;
+    }
+
+    private synchronized FileChannel writeChannel() throws IOException {
+        checkOpen();
+        if (file == null) {
+            Files.createDirectories(directory);
+            file = Files.createTempFile(directory, "batch-spill-", ".tmp");
+        }
+        if (writeChannel == null || !writeChannel.isOpen()) {
+            writeChannel = FileChannel.open(file, StandardOpenOption.WRITE);
+        }
+        return writeChannel;
+    }
+
+    private synchronized FileChannel readChannel() throws IOException {
+        checkOpen();
+        if (file == null) {
+            throw new IOException("Nothing spilled");
+        }
+        if (readChannel == null || !readChannel.isOpen()) {
+            readChannel = FileChannel.open(file, StandardOpenOption.READ);
+        }
+        return readChannel;
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Spill file closed");
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import com.digitalascent.common.io.CompressionCodec;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Governs overflow of a queued batch-loading stream to disk: once the in-memory queue is full (as per its
+ * {@link PrefetchPolicy}), further batches are serialized - optionally compressed - to a temporary spill file rather
+ * than blocking the producer, and read back in order as the consumer catches up.
+ * <p>
+ * Instances are immutable; the with* methods return modified copies.
+ *
+ * @param <T> type of elements in the batches
+ */
+public final class SpillPolicy<T> {
+    private final ElementSerializer<T> serializer;
+    @Nullable
+    private final CompressionCodec compressionCodec;
+    private final Path directory;
+
+    /**
+     * Spills uncompressed batches to the default temporary-file directory
+     *
+     * @param serializer serializer for the elements of spilled batches
+     */
+    public static <T> SpillPolicy<T> spillingTo(ElementSerializer<T> serializer) {
+        checkNotNull(serializer, "serializer is required");
+        return new SpillPolicy<>(serializer, null, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    private SpillPolicy(ElementSerializer<T> serializer, @Nullable CompressionCodec compressionCodec, Path directory) {
+        this.serializer = serializer;
+        this.compressionCodec = compressionCodec;
+        this.directory = directory;
+    }
+
+    /**
+     * Compresses each spilled batch with the provided codec, e.g. <code>CompressionCodecs.lz4()</code>
+     */
+    public SpillPolicy<T> withCompression(CompressionCodec compressionCodec) {
+        checkNotNull(compressionCodec, "compressionCodec is required");
+        return new SpillPolicy<>(serializer, compressionCodec, directory);
+    }
+
+    /**
+     * Creates spill files in the provided directory
+     */
+    public SpillPolicy<T> withDirectory(Path directory) {
+        checkNotNull(directory, "directory is required");
+        return new SpillPolicy<>(serializer, compressionCodec, directory);
+    }
+
+    ElementSerializer<T> serializer() {
+        return serializer;
+    }
+
+    @Nullable
+    CompressionCodec compressionCodec() {
+        return compressionCodec;
+    }
+
+    Path directory() {
+        return directory;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.collect;
+
+import javax.annotation.Nullable;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Spliterator over the elements of a spliterator of batches that, for parallel streams, splits off fetched batches -
+ * and pieces of large batches - for other fork-join workers to process.
+ * <p>
+ * Each split first takes from the current batch: while more than 1/parallelism of the batch remains, half of the
+ * remainder is split off (using the batch's own spliterator); otherwise the whole remainder is.  Once the current
+ * batch has been handed out, the next batch is taken.  To bound the number of batches in memory, each split takes a
+ * permit - waiting, as a managed fork-join blocker such that the pool can compensate, while 2 x parallelism split-off
+ * pieces are outstanding - before taking any batch, and the piece returns it once processed.  Pieces abandoned by a
+ * short-circuiting operation are never processed, so if no outstanding piece is being processed for a while, splitting
+ * stops (<code>trySplit</code> returns null) and the remainder is traversed without further splits.
+ *
+ * @param <T> type of elements in the batches
+ */
+final class SplittingBatchSpliterator<T> implements Spliterator<T> {
+    private static final long MAX_SPLIT_WAIT_MILLIS = 250;
+
+    private final Spliterator<? extends Iterable<T>> batches;
+    private final AtomicInteger splitsInProgress = new AtomicInteger();
+
+    private Spliterator<T> currentBatch = Spliterators.emptySpliterator();
+    private long withinBatchSplitSize = Long.MAX_VALUE;
+    @Nullable
+    private Semaphore outstandingSplits;
+    private int parallelism;
+
+    SplittingBatchSpliterator(Spliterator<? extends Iterable<T>> batches) {
+        this.batches = checkNotNull(batches, "batches is required");
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        checkNotNull(action, "action is required");
+        while (!currentBatch.tryAdvance(action)) {
+            if (!nextBatch()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        checkNotNull(action, "action is required");
+        do {
+            currentBatch.forEachRemaining(action);
+        } while (nextBatch());
+    }
+
+    @Nullable
+    @Override
+    public Spliterator<T> trySplit() {
+        if (outstandingSplits == null) {
+            parallelism = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool().getParallelism() : ForkJoinPool.getCommonPoolParallelism();
+            outstandingSplits = new Semaphore(2 * parallelism);
+        }
+        if (!awaitSplitPermit()) {
+            // outstanding pieces aren't being processed, e.g. abandoned by a short-circuiting operation
+            return null;
+        }
+        if (currentBatch.estimateSize() == 0 && !nextBatch()) {
+            outstandingSplits.release();
+            return null;
+        }
+
+        Spliterator<T> prefix = currentBatch.estimateSize() > withinBatchSplitSize ? currentBatch.trySplit() : null;
+        if (prefix == null) {
+            prefix = currentBatch;
+            currentBatch = Spliterators.emptySpliterator();
+        }
+        return new ReleasingSpliterator<>(prefix, outstandingSplits, splitsInProgress);
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED;
+    }
+
+    private boolean nextBatch() {
+        boolean advanced = batches.tryAdvance(batch -> currentBatch = batch.spliterator());
+        if (advanced) {
+            long batchSize = currentBatch.estimateSize();
+            withinBatchSplitSize = parallelism == 0 || batchSize == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(1, batchSize / parallelism);
+        }
+        return advanced;
+    }
+
+    /**
+     * Waits for a permit for as long as outstanding pieces are being processed
+     *
+     * @return true if a permit was acquired, false if no outstanding piece made progress or the wait was interrupted
+     */
+    private boolean awaitSplitPermit() {
+        SplitPermitBlocker blocker = new SplitPermitBlocker(checkNotNull(outstandingSplits));
+        try {
+            do {
+                ForkJoinPool.managedBlock(blocker);
+            } while (!blocker.acquired && splitsInProgress.get() > 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return blocker.acquired;
+    }
+
+    private static final class SplitPermitBlocker implements ForkJoinPool.ManagedBlocker {
+        private final Semaphore semaphore;
+        private boolean acquired;
+
+        SplitPermitBlocker(Semaphore semaphore) {
+            this.semaphore = semaphore;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            acquired = semaphore.tryAcquire(MAX_SPLIT_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            if (!acquired) {
+                acquired = semaphore.tryAcquire();
+            }
+            return acquired;
+        }
+    }
+
+    /**
+     * Counts itself as in progress once traversal starts, and releases its permit once its elements have been processed
+     */
+    private static final class ReleasingSpliterator<T> implements Spliterator<T> {
+        private final Spliterator<T> delegate;
+        private final Semaphore outstandingSplits;
+        private final AtomicInteger splitsInProgress;
+        private boolean started;
+        private boolean released;
+
+        ReleasingSpliterator(Spliterator<T> delegate, Semaphore outstandingSplits, AtomicInteger splitsInProgress) {
+            this.delegate = delegate;
+            this.outstandingSplits = outstandingSplits;
+            this.splitsInProgress = splitsInProgress;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            start();
+            if (delegate.tryAdvance(action)) {
+                return true;
+            }
+            release();
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            start();
+            try {
+                delegate.forEachRemaining(action);
+            } finally {
+                release();
+            }
+        }
+
+        @Nullable
+        @Override
+        public Spliterator<T> trySplit() {
+            return delegate.trySplit();
+        }
+
+        @Override
+        public long estimateSize() {
+            return delegate.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return delegate.characteristics();
+        }
+
+        private void start() {
+            if (!started && !released) {
+                started = true;
+                splitsInProgress.incrementAndGet();
+            }
+        }
+
+        private void release() {
+            if (!released) {
+                released = true;
+                if (started) {
+                    splitsInProgress.decrementAndGet();
+                }
+                outstandingSplits.release();
+            }
+        }
+    }
+}
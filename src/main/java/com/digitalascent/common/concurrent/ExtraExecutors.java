@@ -19,12 +19,16 @@ package com.digitalascent.common.concurrent;
 import com.digitalascent.common.base.StaticUtilityClass;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Wraps an executor, storing futures for executed tasks
+ * Wraps an executor, storing futures for executed tasks; see {@link TaskGroup} for fan-outs that need bounded
+ * concurrency and fail-fast cancellation
  */
 public final class ExtraExecutors {
 
@@ -39,6 +43,39 @@ public final class ExtraExecutors {
         futures.add(future);
     }
 
+    /**
+     * Returns an executor that starts a new thread for each task, suited to tasks that spend most of their time
+     * blocked.  Uses virtual threads where the runtime supports them (Java 21+), such that the number of platform
+     * threads stays constant regardless of the number of tasks; otherwise uses a cached pool of daemon platform threads.
+     * Threads are named per {@link ExtraThreads#defaultThreadFactory(String)}.
+     *
+     * @param threadPrefix prefix for naming threads
+     * @return ExecutorService
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String threadPrefix) {
+        if (VirtualThreads.isSupported()) {
+            return newVirtualThreadPerTaskExecutor(threadPrefix);
+        }
+        return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat(ExtraThreads.nextThreadNamePrefix(threadPrefix) + "%d")
+                .setDaemon(true)
+                .setUncaughtExceptionHandler(ExtraThreads.defaultUncaughtExceptionHandler())
+                .build());
+    }
+
+    /**
+     * Returns an executor that starts a new virtual thread (Java 21+) for each task, e.g. for blocking I/O fan-outs of
+     * tens of thousands of tasks without sizing a pool; combine with {@link TaskGroup} to bound concurrency.  Threads
+     * are named per {@link ExtraThreads#virtualThreadFactory(String)}.
+     *
+     * @param threadPrefix prefix for naming threads
+     * @return ExecutorService
+     * @throws IllegalStateException if the runtime does not support virtual threads; see {@link ExtraThreads#isVirtualThreadSupported()}
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String threadPrefix) {
+        return VirtualThreads.newThreadPerTaskExecutor(ExtraThreads.virtualThreadFactory(threadPrefix));
+    }
+
     private ExtraExecutors() {
         StaticUtilityClass.throwCannotInstantiateError( getClass() );
     }
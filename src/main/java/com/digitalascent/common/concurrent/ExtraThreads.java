@@ -42,14 +42,20 @@ public final class ExtraThreads {
     }
 
     private static ThreadFactoryBuilder defaultThreadFactoryBuilder(String threadPoolPrefix) {
-        checkArgument(!isNullOrEmpty(threadPoolPrefix), "threadPoolPrefix is required to be non-null & not empty: %s", threadPoolPrefix);
-
         ThreadFactoryBuilder builder = new ThreadFactoryBuilder();
         builder.setUncaughtExceptionHandler(DEFAULT_UNCAUGHT_EXCEPTION_HANDLER);
-        builder.setNameFormat(String.format("%s-%d-%%d", threadPoolPrefix, THREAD_FACTORY_COUNTER.incrementAndGet()));
+        builder.setNameFormat(nextThreadNamePrefix(threadPoolPrefix) + "%d");
         return builder;
     }
 
+    /**
+     * @return 'prefix-#-', with the pool # incrementing for each call
+     */
+    static String nextThreadNamePrefix(String threadPoolPrefix) {
+        checkArgument(!isNullOrEmpty(threadPoolPrefix), "threadPoolPrefix is required to be non-null & not empty: %s", threadPoolPrefix);
+        return String.format("%s-%d-", threadPoolPrefix, THREAD_FACTORY_COUNTER.incrementAndGet());
+    }
+
     /**
      * Provides a default thread factory for use in thread pools.  ExtraThreads are named 'prefix-#-#' to uniquely identify them,
      * with the pool # incrementing for each thread factory.
@@ -62,6 +68,26 @@ public final class ExtraThreads {
         return defaultThreadFactoryBuilder(threadPoolPrefix).build();
     }
 
+    /**
+     * @return true if the runtime supports virtual threads (Java 21+)
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VirtualThreads.isSupported();
+    }
+
+    /**
+     * Provides a thread factory for virtual threads (Java 21+), suited to large numbers of mostly-blocked tasks.  As per
+     * {@link #defaultThreadFactory(String)}, threads are named 'prefix-#-#' and use the default uncaught exception handler.
+     *
+     * @param threadPrefix prefix for naming threads
+     * @return ThreadFactory
+     * @throws IllegalStateException if the runtime does not support virtual threads; see {@link #isVirtualThreadSupported()}
+     */
+    public static ThreadFactory virtualThreadFactory(String threadPrefix) {
+        VirtualThreads.checkSupported();
+        return VirtualThreads.threadFactory(nextThreadNamePrefix(threadPrefix), DEFAULT_UNCAUGHT_EXCEPTION_HANDLER);
+    }
+
     /**
      * Throws InterruptedException if the current thread has been interrupted; useful to place in looping constructs
      * to abort processing if thread has been externally interrupted.
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.digitalascent.common.concurrent;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Runs a fan-out of tasks on an executor with at most <code>maximumConcurrency</code> tasks in flight, gathering
+ * results as they complete and failing fast: the first task to fail cancels (interrupts) all others, and the group
+ * accepts no further tasks.
+ * <p>
+ * {@link #submit(Callable)} blocks while the group is saturated; {@link #trySubmit(Callable)} rejects instead.  Only
+ * in-flight tasks are tracked, so memory and threads stay bounded regardless of how many tasks are submitted - except
+ * for the results of completed <code>Callable</code>s, which are retained until taken via {@link #take()} or
+ * {@link #awaitAll()}.  The results of <code>Runnable</code>s are not retained.
+ * <p>
+ * Example usage:
+ * <pre>
+ * try (TaskGroup&lt;Void&gt; group = TaskGroup.create(executor, 64)) {
+ *     for (String key : keys) {
+ *         group.submit(() -&gt; s3.deleteObject(bucket, key));
+ *     }
+ *     group.awaitAll();
+ * }
+ * </pre>
+ *
+ * @param <T> type of task results
+ */
+public final class TaskGroup<T> implements AutoCloseable {
+    private final Executor executor;
+    private final int maximumConcurrency;
+    private final Semaphore permits;
+    private final Set<Future<?>> inFlight = ConcurrentHashMap.newKeySet();
+
+    // guarded by this
+    private final Deque<ListenableFuture<T>> completed = new ArrayDeque<>();
+    private int running;
+    private boolean closed;
+    @Nullable
+    private volatile Throwable failure;
+
+    /**
+     * @param executor           executor to run tasks on; must be able to run <code>maximumConcurrency</code> tasks concurrently
+     * @param maximumConcurrency maximum number of tasks in flight
+     */
+    public static <T> TaskGroup<T> create(Executor executor, int maximumConcurrency) {
+        checkNotNull(executor, "executor is required");
+        checkArgument(maximumConcurrency > 0, "maximumConcurrency > 0 : %s", maximumConcurrency);
+        return new TaskGroup<>(executor, maximumConcurrency);
+    }
+
+    private TaskGroup(Executor executor, int maximumConcurrency) {
+        this.executor = executor;
+        this.maximumConcurrency = maximumConcurrency;
+        this.permits = new Semaphore(maximumConcurrency);
+    }
+
+    /**
+     * Submits the task, waiting while <code>maximumConcurrency</code> tasks are in flight; its result is retained until taken
+     *
+     * @throws RejectedExecutionException if a task has failed or the group is closed
+     */
+    public ListenableFuture<T> submit(Callable<T> task) throws InterruptedException {
+        checkNotNull(task, "task is required");
+        checkAccepting();
+        permits.acquire();
+        return start(ListenableFutureTask.create(task), true);
+    }
+
+    /**
+     * Submits the task, waiting while <code>maximumConcurrency</code> tasks are in flight
+     *
+     * @throws RejectedExecutionException if a task has failed or the group is closed
+     */
+    public ListenableFuture<?> submit(Runnable task) throws InterruptedException {
+        checkNotNull(task, "task is required");
+        checkAccepting();
+        permits.acquire();
+        return start(ListenableFutureTask.create(task, null), false);
+    }
+
+    /**
+     * Submits the task if fewer than <code>maximumConcurrency</code> tasks are in flight; its result is retained until taken
+     *
+     * @throws RejectedExecutionException if the group is saturated, a task has failed or the group is closed
+     */
+    public ListenableFuture<T> trySubmit(Callable<T> task) {
+        checkNotNull(task, "task is required");
+        acquireOrReject();
+        return start(ListenableFutureTask.create(task), true);
+    }
+
+    /**
+     * Submits the task if fewer than <code>maximumConcurrency</code> tasks are in flight
+     *
+     * @throws RejectedExecutionException if the group is saturated, a task has failed or the group is closed
+     */
+    public ListenableFuture<?> trySubmit(Runnable task) {
+        checkNotNull(task, "task is required");
+        acquireOrReject();
+        return start(ListenableFutureTask.create(task, null), false);
+    }
+
+    /**
+     * Waits for the next task to complete, in order of completion, and returns its result
+     *
+     * @throws ExecutionException    with the cause of the first task failure
+     * @throws IllegalStateException if there are no tasks in flight or results to take
+     */
+    public synchronized T take() throws InterruptedException, ExecutionException {
+        while (true) {
+            throwIfFailed();
+            ListenableFuture<T> next = completed.pollFirst();
+            if (next != null) {
+                return Futures.getDone(next);
+            }
+            checkState(running > 0, "No tasks in flight");
+            wait();
+        }
+    }
+
+    /**
+     * Waits for all tasks in flight to complete
+     *
+     * @return results not yet taken, in order of completion
+     * @throws ExecutionException with the cause of the first task failure
+     */
+    public synchronized List<T> awaitAll() throws InterruptedException, ExecutionException {
+        while (running > 0 && failure == null) {
+            wait();
+        }
+        throwIfFailed();
+        List<T> results = new ArrayList<>(completed.size());
+        for (ListenableFuture<T> future : completed) {
+            results.add(Futures.getDone(future));
+        }
+        completed.clear();
+        return results;
+    }
+
+    /**
+     * @return number of tasks in flight
+     */
+    public synchronized int running() {
+        return running;
+    }
+
+    /**
+     * Cancels (interrupting) any tasks in flight, without waiting for them to stop; no further tasks are accepted
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        cancelInFlight();
+    }
+
+    private <V> ListenableFuture<V> start(ListenableFutureTask<V> task, boolean retainResult) {
+        synchronized (this) {
+            if (closed || failure != null) {
+                permits.release();
+                throw rejected();
+            }
+            running++;
+        }
+        inFlight.add(task);
+        task.addListener(() -> complete(task, retainResult), MoreExecutors.directExecutor());
+        if (failure != null) {
+            // a sibling failed after the check above, possibly without seeing this task
+            task.cancel(false);
+        }
+        try {
+            executor.execute(task);
+        } catch (RuntimeException e) {
+            // completes the task, releasing its permit
+            task.cancel(false);
+            throw e;
+        }
+        return task;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void complete(ListenableFuture<?> task, boolean retainResult) {
+        Throwable taskFailure = null;
+        if (!task.isCancelled()) {
+            try {
+                Futures.getDone(task);
+            } catch (ExecutionException e) {
+                taskFailure = e.getCause();
+            }
+        }
+
+        boolean firstFailure = false;
+        synchronized (this) {
+            running--;
+            if (taskFailure != null) {
+                firstFailure = failure == null;
+                if (firstFailure) {
+                    failure = taskFailure;
+                }
+            } else if (retainResult && !task.isCancelled()) {
+                completed.addLast((ListenableFuture<T>) task);
+            }
+            // release before notifying, such that woken waiters (and callers of running()) can submit straight away
+            inFlight.remove(task);
+            permits.release();
+            notifyAll();
+        }
+        if (firstFailure) {
+            cancelInFlight();
+        }
+    }
+
+    private void cancelInFlight() {
+        for (Future<?> future : inFlight) {
+            future.cancel(true);
+        }
+    }
+
+    private void acquireOrReject() {
+        checkAccepting();
+        if (!permits.tryAcquire()) {
+            throw new RejectedExecutionException("Task group saturated; " + maximumConcurrency + " tasks in flight");
+        }
+    }
+
+    private void checkAccepting() {
+        synchronized (this) {
+            if (closed || failure != null) {
+                throw rejected();
+            }
+        }
+    }
+
+    private RejectedExecutionException rejected() {
+        return new RejectedExecutionException(closed ? "Task group closed" : "Task group failed", failure);
+    }
+
+    private void throwIfFailed() throws ExecutionException {
+        Throwable taskFailure = failure;
+        if (taskFailure != null) {
+            throw new ExecutionException(taskFailure);
+        }
+    }
+}
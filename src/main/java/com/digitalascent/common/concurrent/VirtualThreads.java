@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.digitalascent.common.concurrent;
+
+import com.digitalascent.common.base.StaticUtilityClass;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Reflective access to virtual threads (Java 21+), allowing this library to continue targeting Java 8.
+ */
+final class VirtualThreads {
+
+    @Nullable
+    private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+    @Nullable
+    private static final Class<?> BUILDER_CLASS = findClass("java.lang.Thread$Builder");
+    @Nullable
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR = findMethod(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+    private static final boolean SUPPORTED = probe();
+
+    /**
+     * @return true if virtual threads can actually be created; on Java 19/20 the API exists but fails unless preview
+     * features are enabled
+     */
+    static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    static void checkSupported() {
+        checkState(isSupported(), "Virtual threads are not supported by this runtime (%s)", System.getProperty("java.version"));
+    }
+
+    /**
+     * @param namePrefix prefix for thread names; a counter (starting at 0) is appended
+     */
+    static ThreadFactory threadFactory(String namePrefix, Thread.UncaughtExceptionHandler uncaughtExceptionHandler) {
+        checkSupported();
+        try {
+            return buildThreadFactory(namePrefix, uncaughtExceptionHandler);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Unable to create virtual thread factory", e);
+        }
+    }
+
+    static ExecutorService newThreadPerTaskExecutor(ThreadFactory threadFactory) {
+        checkSupported();
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Unable to create thread-per-task executor", e);
+        }
+    }
+
+    private static ThreadFactory buildThreadFactory(String namePrefix, Thread.UncaughtExceptionHandler uncaughtExceptionHandler)
+            throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        Object builder = checkNotNull(OF_VIRTUAL).invoke(null);
+        Class<?> builderClass = checkNotNull(BUILDER_CLASS);
+        builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+        builder = builderClass.getMethod("uncaughtExceptionHandler", Thread.UncaughtExceptionHandler.class).invoke(builder, uncaughtExceptionHandler);
+        return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    }
+
+    /**
+     * Creates (without starting) a virtual thread and a thread-per-task executor, treating any failure as unsupported
+     */
+    private static boolean probe() {
+        if (OF_VIRTUAL == null || BUILDER_CLASS == null || NEW_THREAD_PER_TASK_EXECUTOR == null) {
+            return false;
+        }
+        try {
+            ThreadFactory threadFactory = buildThreadFactory("virtual-thread-probe-", (thread, throwable) -> {
+            });
+            threadFactory.newThread(() -> {
+            });
+            ((ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory)).shutdown();
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            return false;
+        }
+    }
+
+    @Nullable
+    private static Method findMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+        try {
+            return clazz.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Class<?> findClass(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private VirtualThreads() {
+        StaticUtilityClass.throwCannotInstantiateError(getClass());
+    }
+}
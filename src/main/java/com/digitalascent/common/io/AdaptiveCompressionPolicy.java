@@ -0,0 +1,143 @@
+package com.digitalascent.common.io;
+
+import javax.annotation.Nullable;
+import java.util.function.LongSupplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Governs how {@link AdaptiveGZIPOutputStream} steps the deflate level between blocks.  The level is lowered when
+ * compression falls behind the target (or the pending backlog exceeds its limit) and raised when there is headroom,
+ * one step per block, within [minimumLevel, maximumLevel].
+ *
+ * Instances are immutable; the with* methods return modified copies.
+ */
+public final class AdaptiveCompressionPolicy {
+    private static final double HEADROOM = 0.25;
+    private static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private final long targetBytesPerSecond;
+    private final double targetCpuShare;
+    private final int minimumLevel;
+    private final int maximumLevel;
+    private final int initialLevel;
+    private final int blockSize;
+    @Nullable
+    private final LongSupplier backlogSupplier;
+    private final long maximumBacklog;
+
+    /**
+     * Adapts the level such that each block compresses at (at least) the target rate
+     *
+     * @param targetBytesPerSecond uncompressed bytes per second to sustain
+     */
+    public static AdaptiveCompressionPolicy forTargetThroughput(long targetBytesPerSecond) {
+        checkArgument(targetBytesPerSecond > 0, "targetBytesPerSecond > 0 : %s", targetBytesPerSecond);
+        return new AdaptiveCompressionPolicy(targetBytesPerSecond, 0, GzipCompressionLevel.BEST_SPEED.getValue(),
+                GzipCompressionLevel.BEST_COMPRESSION.getValue(), GzipCompressionLevel.BALANCED.getValue(), DEFAULT_BLOCK_SIZE, null, 0);
+    }
+
+    /**
+     * Adapts the level such that the writing thread spends (at most) the target share of wall-clock time compressing
+     *
+     * @param targetCpuShare fraction of elapsed time, in (0,1]
+     */
+    public static AdaptiveCompressionPolicy forTargetCpuShare(double targetCpuShare) {
+        checkArgument(targetCpuShare > 0 && targetCpuShare <= 1, "targetCpuShare in (0,1] : %s", targetCpuShare);
+        return new AdaptiveCompressionPolicy(0, targetCpuShare, GzipCompressionLevel.BEST_SPEED.getValue(),
+                GzipCompressionLevel.BEST_COMPRESSION.getValue(), GzipCompressionLevel.BALANCED.getValue(), DEFAULT_BLOCK_SIZE, null, 0);
+    }
+
+    private AdaptiveCompressionPolicy(long targetBytesPerSecond, double targetCpuShare, int minimumLevel, int maximumLevel,
+                                      int initialLevel, int blockSize, @Nullable LongSupplier backlogSupplier, long maximumBacklog) {
+        this.targetBytesPerSecond = targetBytesPerSecond;
+        this.targetCpuShare = targetCpuShare;
+        this.minimumLevel = minimumLevel;
+        this.maximumLevel = maximumLevel;
+        this.initialLevel = initialLevel;
+        this.blockSize = blockSize;
+        this.backlogSupplier = backlogSupplier;
+        this.maximumBacklog = maximumBacklog;
+    }
+
+    public AdaptiveCompressionPolicy withLevelRange(int minimumLevel, int maximumLevel) {
+        checkArgument(minimumLevel >= GzipCompressionLevel.NO_COMPRESSION.getValue() && maximumLevel <= GzipCompressionLevel.BEST_COMPRESSION.getValue(),
+                "levels must be within [0,9] : %s, %s", minimumLevel, maximumLevel);
+        checkArgument(minimumLevel <= maximumLevel, "minimumLevel <= maximumLevel : %s, %s", minimumLevel, maximumLevel);
+        return new AdaptiveCompressionPolicy(targetBytesPerSecond, targetCpuShare, minimumLevel, maximumLevel,
+                clamp(initialLevel, minimumLevel, maximumLevel), blockSize, backlogSupplier, maximumBacklog);
+    }
+
+    public AdaptiveCompressionPolicy withInitialLevel(GzipCompressionLevel initialLevel) {
+        checkNotNull(initialLevel, "initialLevel is required");
+        return new AdaptiveCompressionPolicy(targetBytesPerSecond, targetCpuShare, minimumLevel, maximumLevel,
+                clamp(initialLevel.getValue(), minimumLevel, maximumLevel), blockSize, backlogSupplier, maximumBacklog);
+    }
+
+    /**
+     * @param blockSize number of uncompressed bytes between level adjustments
+     */
+    public AdaptiveCompressionPolicy withBlockSize(int blockSize) {
+        checkArgument(blockSize > 0, "blockSize > 0 : %s", blockSize);
+        return new AdaptiveCompressionPolicy(targetBytesPerSecond, targetCpuShare, minimumLevel, maximumLevel,
+                initialLevel, blockSize, backlogSupplier, maximumBacklog);
+    }
+
+    /**
+     * Additionally lowers the level whenever the pending backlog (as reported by the caller, e.g. queued bytes
+     * awaiting compression) exceeds the provided maximum; the level is only raised while the backlog is below half
+     * the maximum.
+     */
+    public AdaptiveCompressionPolicy withBacklog(LongSupplier backlogSupplier, long maximumBacklog) {
+        checkNotNull(backlogSupplier, "backlogSupplier is required");
+        checkArgument(maximumBacklog > 0, "maximumBacklog > 0 : %s", maximumBacklog);
+        return new AdaptiveCompressionPolicy(targetBytesPerSecond, targetCpuShare, minimumLevel, maximumLevel,
+                initialLevel, blockSize, backlogSupplier, maximumBacklog);
+    }
+
+    int initialLevel() {
+        return initialLevel;
+    }
+
+    int blockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @param currentLevel   level used for the block just compressed
+     * @param blockBytes     uncompressed bytes in the block
+     * @param compressNanos  time spent compressing (and writing) the block
+     * @param elapsedNanos   wall-clock time since the previous block completed
+     * @return level to use for the next block
+     */
+    int nextLevel(int currentLevel, long blockBytes, long compressNanos, long elapsedNanos) {
+        long backlog = backlogSupplier == null ? 0 : backlogSupplier.getAsLong();
+        if (backlogSupplier != null && backlog > maximumBacklog) {
+            return clamp(currentLevel - 1, minimumLevel, maximumLevel);
+        }
+        boolean backlogAllowsIncrease = backlogSupplier == null || backlog <= maximumBacklog / 2;
+
+        double pressure;
+        if (targetBytesPerSecond > 0) {
+            // ratio of target rate to achieved rate; > 1 means compression is too slow
+            double bytesPerSecond = blockBytes * 1_000_000_000.0 / Math.max(compressNanos, 1);
+            pressure = targetBytesPerSecond / bytesPerSecond;
+        } else {
+            double cpuShare = (double) compressNanos / Math.max(elapsedNanos, compressNanos);
+            pressure = cpuShare / targetCpuShare;
+        }
+
+        if (pressure > 1) {
+            return clamp(currentLevel - 1, minimumLevel, maximumLevel);
+        }
+        if (pressure < 1 - HEADROOM && backlogAllowsIncrease) {
+            return clamp(currentLevel + 1, minimumLevel, maximumLevel);
+        }
+        return clamp(currentLevel, minimumLevel, maximumLevel);
+    }
+
+    private static int clamp(int level, int minimumLevel, int maximumLevel) {
+        return Math.max(minimumLevel, Math.min(maximumLevel, level));
+    }
+}
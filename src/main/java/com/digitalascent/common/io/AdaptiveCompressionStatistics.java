@@ -0,0 +1,77 @@
+package com.digitalascent.common.io;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe counters describing the behaviour of one or more adaptive compression streams.
+ */
+public final class AdaptiveCompressionStatistics {
+    private final LongAdder blocks = new LongAdder();
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+    private final LongAdder levelIncreases = new LongAdder();
+    private final LongAdder levelDecreases = new LongAdder();
+    private volatile int currentLevel = -1;
+
+    void recordBlock(long blockBytes, long blockCompressNanos) {
+        blocks.increment();
+        uncompressedBytes.add(blockBytes);
+        compressNanos.add(blockCompressNanos);
+    }
+
+    void recordLevel(int previousLevel, int level) {
+        if (level > previousLevel) {
+            levelIncreases.increment();
+        } else if (level < previousLevel) {
+            levelDecreases.increment();
+        }
+        currentLevel = level;
+    }
+
+    public long blocks() {
+        return blocks.sum();
+    }
+
+    public long uncompressedBytes() {
+        return uncompressedBytes.sum();
+    }
+
+    public long compressNanos() {
+        return compressNanos.sum();
+    }
+
+    /**
+     * @return average uncompressed bytes per second across all blocks, or 0 if nothing has been compressed
+     */
+    public double averageBytesPerSecond() {
+        long nanos = compressNanos.sum();
+        return nanos == 0 ? 0 : uncompressedBytes.sum() * 1_000_000_000.0 / nanos;
+    }
+
+    public long levelIncreases() {
+        return levelIncreases.sum();
+    }
+
+    public long levelDecreases() {
+        return levelDecreases.sum();
+    }
+
+    /**
+     * @return deflate level most recently selected, or -1 if no stream has started
+     */
+    public int currentLevel() {
+        return currentLevel;
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveCompressionStatistics{" +
+                "blocks=" + blocks() +
+                ", uncompressedBytes=" + uncompressedBytes() +
+                ", averageBytesPerSecond=" + averageBytesPerSecond() +
+                ", levelIncreases=" + levelIncreases() +
+                ", levelDecreases=" + levelDecreases() +
+                ", currentLevel=" + currentLevel +
+                '}';
+    }
+}
@@ -0,0 +1,108 @@
+package com.digitalascent.common.io;
+
+import com.google.common.base.Ticker;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * GZIP output stream that adjusts the deflate level between blocks based on measured compression throughput, as
+ * governed by the supplied {@link AdaptiveCompressionPolicy}.  Writes are accumulated into blocks of the policy's
+ * block size; each block is compressed and timed, then the level for the next block is selected.
+ */
+public final class AdaptiveGZIPOutputStream extends GZIPOutputStream {
+    private final AdaptiveCompressionPolicy policy;
+    private final AdaptiveCompressionStatistics statistics;
+    private final Ticker ticker;
+    private final byte[] block;
+    private int blockLength;
+    private int level;
+    private long lastBlockEndNanos;
+
+    public AdaptiveGZIPOutputStream(OutputStream out, AdaptiveCompressionPolicy policy) throws IOException {
+        this(out, policy, new AdaptiveCompressionStatistics(), Ticker.systemTicker());
+    }
+
+    public AdaptiveGZIPOutputStream(OutputStream out, AdaptiveCompressionPolicy policy, AdaptiveCompressionStatistics statistics) throws IOException {
+        this(out, policy, statistics, Ticker.systemTicker());
+    }
+
+    AdaptiveGZIPOutputStream(OutputStream out, AdaptiveCompressionPolicy policy, AdaptiveCompressionStatistics statistics, Ticker ticker) throws IOException {
+        super(out);
+        this.policy = checkNotNull(policy, "policy is required");
+        this.statistics = checkNotNull(statistics, "statistics is required");
+        this.ticker = checkNotNull(ticker, "ticker is required");
+        this.block = new byte[policy.blockSize()];
+        this.level = policy.initialLevel();
+        this.lastBlockEndNanos = ticker.read();
+        def.setLevel(level);
+        statistics.recordLevel(level, level);
+    }
+
+    public AdaptiveCompressionStatistics statistics() {
+        return statistics;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        if (blockLength == block.length) {
+            compressBlock();
+        }
+        block[blockLength++] = (byte) b;
+    }
+
+    @Override
+    public synchronized void write(byte[] buffer, int offset, int length) throws IOException {
+        if ((offset | length | (offset + length) | (buffer.length - (offset + length))) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (length > 0) {
+            if (blockLength == block.length) {
+                compressBlock();
+            }
+            int toCopy = Math.min(length, block.length - blockLength);
+            System.arraycopy(buffer, offset, block, blockLength, toCopy);
+            blockLength += toCopy;
+            offset += toCopy;
+            length -= toCopy;
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (blockLength > 0) {
+            compressBlock();
+        }
+        super.flush();
+    }
+
+    @Override
+    public synchronized void finish() throws IOException {
+        if (blockLength > 0) {
+            compressBlock();
+        }
+        super.finish();
+    }
+
+    private void compressBlock() throws IOException {
+        long startNanos = ticker.read();
+        super.write(block, 0, blockLength);
+        long endNanos = ticker.read();
+
+        long compressNanos = endNanos - startNanos;
+        statistics.recordBlock(blockLength, compressNanos);
+
+        int nextLevel = policy.nextLevel(level, blockLength, compressNanos, endNanos - lastBlockEndNanos);
+        if (nextLevel != level) {
+            // takes effect on the next deflate call
+            def.setLevel(nextLevel);
+            statistics.recordLevel(level, nextLevel);
+            level = nextLevel;
+        }
+        lastBlockEndNanos = endNanos;
+        blockLength = 0;
+    }
+}
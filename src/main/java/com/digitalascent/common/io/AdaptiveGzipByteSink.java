@@ -0,0 +1,33 @@
+package com.digitalascent.common.io;
+
+import com.google.common.io.ByteSink;
+import com.google.errorprone.annotations.MustBeClosed;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * ByteSink producing {@link AdaptiveGZIPOutputStream}s; all opened streams report into the same statistics.
+ */
+public final class AdaptiveGzipByteSink extends ByteSink {
+    private final ByteSink delegate;
+    private final AdaptiveCompressionPolicy policy;
+    private final AdaptiveCompressionStatistics statistics = new AdaptiveCompressionStatistics();
+
+    public AdaptiveGzipByteSink(ByteSink delegate, AdaptiveCompressionPolicy policy) {
+        this.delegate = checkNotNull(delegate, "delegate is required");
+        this.policy = checkNotNull(policy, "policy is required");
+    }
+
+    public AdaptiveCompressionStatistics statistics() {
+        return statistics;
+    }
+
+    @MustBeClosed
+    @Override
+    public OutputStream openStream() throws IOException {
+        return new AdaptiveGZIPOutputStream(delegate.openBufferedStream(), policy, statistics);
+    }
+}
@@ -0,0 +1,253 @@
+package com.digitalascent.common.io;
+
+import com.digitalascent.common.concurrent.ExtraThreads;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * GZIP output stream that moves compression off the writing thread.  Writers fill a buffer; full buffers are handed
+ * to a background task that compresses them (in order) and writes the result to the underlying stream, while the
+ * writer continues filling the next buffer.
+ *
+ * Backpressure: at most maxInFlightBuffers buffers are queued or being compressed; writers block once all are in use.
+ *
+ * Failures in the background task are reported on the next call to write, flush or close; close always closes the
+ * underlying stream, even after a failure.
+ *
+ * Not thread safe for concurrent writers.
+ */
+public final class AsyncGZIPOutputStream extends OutputStream {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_IN_FLIGHT_BUFFERS = 2;
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    private final OutputStream out;
+    private final ConfigurableGZIPOutputStream gzipOutputStream;
+    private final Executor compressionExecutor;
+    @Nullable
+    private final ExecutorService ownedExecutorService;
+    private final BlockingQueue<byte[]> freeBuffers;
+
+    private byte[] buffer;
+    private int bufferLength;
+    private boolean closed;
+
+    @Nullable
+    private volatile Throwable failure;
+
+    /**
+     * Creates a double-buffered stream compressing on a dedicated thread, which is released on close
+     */
+    public AsyncGZIPOutputStream(OutputStream out, GzipCompressionLevel compressionLevel) throws IOException {
+        this(out, compressionLevel, DEFAULT_BUFFER_SIZE, DEFAULT_IN_FLIGHT_BUFFERS, null);
+    }
+
+    /**
+     * @param bufferSize          size of each uncompressed buffer
+     * @param maxInFlightBuffers  number of buffers that may be queued for, or undergoing, compression
+     * @param executor            executor to run compression on; compression tasks for this stream are run sequentially.
+     *                            If null a dedicated thread is used and released on close.
+     */
+    public AsyncGZIPOutputStream(OutputStream out, GzipCompressionLevel compressionLevel, int bufferSize, int maxInFlightBuffers,
+                                 @Nullable Executor executor) throws IOException {
+        checkNotNull(out, "out is required");
+        checkNotNull(compressionLevel, "compressionLevel is required");
+        checkArgument(bufferSize > 0, "bufferSize > 0 : %s", bufferSize);
+        checkArgument(maxInFlightBuffers > 0, "maxInFlightBuffers > 0 : %s", maxInFlightBuffers);
+
+        if (executor == null) {
+            ownedExecutorService = Executors.newSingleThreadExecutor(ExtraThreads.defaultThreadFactory("AsyncGZIPOutputStream"));
+            compressionExecutor = ownedExecutorService;
+        } else {
+            ownedExecutorService = null;
+            compressionExecutor = MoreExecutors.newSequentialExecutor(executor);
+        }
+
+        // one additional slot for the buffer currently being filled
+        freeBuffers = new ArrayBlockingQueue<>(maxInFlightBuffers + 1);
+        for (int i = 0; i < maxInFlightBuffers; i++) {
+            freeBuffers.add(new byte[bufferSize]);
+        }
+        buffer = new byte[bufferSize];
+        this.out = out;
+        // sync flush, such that flush() makes all written data available to readers of the underlying stream
+        gzipOutputStream = new ConfigurableGZIPOutputStream(out, GZIP_BUFFER_SIZE, true, compressionLevel);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (bufferLength == buffer.length) {
+            submitBuffer();
+        }
+        buffer[bufferLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        if ((offset | length | (offset + length) | (bytes.length - (offset + length))) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (length > 0) {
+            if (bufferLength == buffer.length) {
+                submitBuffer();
+            }
+            int toCopy = Math.min(length, buffer.length - bufferLength);
+            System.arraycopy(bytes, offset, buffer, bufferLength, toCopy);
+            bufferLength += toCopy;
+            offset += toCopy;
+            length -= toCopy;
+        }
+    }
+
+    /**
+     * Waits for all written data to be compressed and flushed to the underlying stream
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (bufferLength > 0) {
+            submitBuffer();
+        }
+        awaitBackground(gzipOutputStream::flush);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (failure == null && bufferLength > 0) {
+                submitBuffer();
+            }
+        } finally {
+            try {
+                runInBackground(this::closeUnderlying);
+            } finally {
+                if (ownedExecutorService != null) {
+                    ownedExecutorService.shutdown();
+                }
+            }
+        }
+    }
+
+    /**
+     * Finishes the compressed stream, closing the underlying stream; after a failure the compressed stream can't be
+     * finished, but the deflater is still released and the underlying stream still closed
+     */
+    private void closeUnderlying() throws IOException {
+        try {
+            if (failure == null) {
+                gzipOutputStream.close();
+                return;
+            }
+        } catch (IOException | RuntimeException e) {
+            recordFailure(e);
+        } finally {
+            gzipOutputStream.endDeflater();
+        }
+        out.close();
+    }
+
+    private void submitBuffer() throws IOException {
+        throwIfFailed();
+        byte[] fullBuffer = buffer;
+        int length = bufferLength;
+        compressionExecutor.execute(() -> {
+            try {
+                if (failure == null) {
+                    gzipOutputStream.write(fullBuffer, 0, length);
+                }
+            } catch (Throwable t) {
+                recordFailure(t);
+            } finally {
+                freeBuffers.add(fullBuffer);
+            }
+        });
+
+        // blocks while all buffers are in flight
+        buffer = Uninterruptibles.takeUninterruptibly(freeBuffers);
+        bufferLength = 0;
+    }
+
+    private void awaitBackground(IoAction action) throws IOException {
+        runInBackground(() -> {
+            if (failure == null) {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Runs the action after all submitted buffers, waiting for it to complete and reporting any failure
+     */
+    private void runInBackground(IoAction action) throws IOException {
+        SettableFuture<Void> completion = SettableFuture.create();
+        compressionExecutor.execute(() -> {
+            try {
+                action.run();
+            } catch (Throwable t) {
+                recordFailure(t);
+            } finally {
+                completion.set(null);
+            }
+        });
+        try {
+            Uninterruptibles.getUninterruptibly(completion);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        throwIfFailed();
+    }
+
+    /**
+     * Records the first failure, attaching subsequent ones as suppressed; only called from the (sequential) background task
+     */
+    private void recordFailure(Throwable t) {
+        Throwable firstFailure = failure;
+        if (firstFailure == null) {
+            failure = t;
+        } else if (firstFailure != t) {
+            firstFailure.addSuppressed(t);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        throwIfFailed();
+    }
+
+    private void throwIfFailed() throws IOException {
+        Throwable t = failure;
+        if (t != null) {
+            Throwables.throwIfInstanceOf(t, IOException.class);
+            Throwables.throwIfUnchecked(t);
+            throw new IOException(t);
+        }
+    }
+
+    @FunctionalInterface
+    private interface IoAction {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,198 @@
+package com.digitalascent.common.io;
+
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Streaming GZIP output stream that coalesces sync flushes.  Written data is sync-flushed (made readable by consumers
+ * tailing the underlying stream) once it has been pending for maxFlushLatency, or once maxUnflushedBytes have
+ * accumulated, whichever comes first; flushes requested in between are absorbed, preserving compression ratio.
+ *
+ * With a scheduler, pending data is flushed by a timer even if no further writes occur.  Without one, deadlines are
+ * only checked on write / flush / {@link #flushIfDue()}, allowing callers to drive flushing from their own clock.
+ *
+ * Failures from timer-initiated flushes are reported on the next call to write, flush or close.
+ */
+public final class CoalescingGZIPOutputStream extends OutputStream {
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    private final OutputStream gzipOutputStream;
+    private final long maxFlushLatencyNanos;
+    private final long maxUnflushedBytes;
+    @Nullable
+    private final ScheduledExecutorService scheduler;
+    private final Ticker ticker;
+
+    private long unflushedBytes;
+    private long firstUnflushedWriteNanos;
+    @Nullable
+    private ScheduledFuture<?> scheduledFlush;
+    @Nullable
+    private Throwable failure;
+    private boolean closed;
+
+    private long flushCount;
+    private long coalescedFlushCount;
+
+    public CoalescingGZIPOutputStream(OutputStream out, GzipCompressionLevel compressionLevel, Duration maxFlushLatency,
+                                      long maxUnflushedBytes, @Nullable ScheduledExecutorService scheduler) throws IOException {
+        this(out, compressionLevel, maxFlushLatency, maxUnflushedBytes, scheduler, Ticker.systemTicker());
+    }
+
+    CoalescingGZIPOutputStream(OutputStream out, GzipCompressionLevel compressionLevel, Duration maxFlushLatency,
+                               long maxUnflushedBytes, @Nullable ScheduledExecutorService scheduler, Ticker ticker) throws IOException {
+        checkNotNull(out, "out is required");
+        checkNotNull(compressionLevel, "compressionLevel is required");
+        checkNotNull(maxFlushLatency, "maxFlushLatency is required");
+        checkArgument(!maxFlushLatency.isNegative(), "maxFlushLatency >= 0 : %s", maxFlushLatency);
+        checkArgument(maxUnflushedBytes > 0, "maxUnflushedBytes > 0 : %s", maxUnflushedBytes);
+
+        this.maxFlushLatencyNanos = maxFlushLatency.toNanos();
+        this.maxUnflushedBytes = maxUnflushedBytes;
+        this.scheduler = scheduler;
+        this.ticker = checkNotNull(ticker, "ticker is required");
+        this.gzipOutputStream = new ConfigurableGZIPOutputStream(out, GZIP_BUFFER_SIZE, true, compressionLevel);
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureOpen();
+        gzipOutputStream.write(b);
+        afterWrite(1);
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        if (length == 0) {
+            return;
+        }
+        gzipOutputStream.write(bytes, offset, length);
+        afterWrite(length);
+    }
+
+    /**
+     * Requests a flush; performed only if pending data has reached its latency or size limit, otherwise coalesced
+     * with subsequent flushes.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        if (!flushIfDue() && unflushedBytes > 0) {
+            coalescedFlushCount++;
+        }
+    }
+
+    /**
+     * Sync-flushes pending data if it has been pending for at least maxFlushLatency or exceeds maxUnflushedBytes
+     *
+     * @return true if a flush was performed
+     */
+    public synchronized boolean flushIfDue() throws IOException {
+        ensureOpen();
+        if (unflushedBytes > 0 && (unflushedBytes >= maxUnflushedBytes || ticker.read() - firstUnflushedWriteNanos >= maxFlushLatencyNanos)) {
+            syncFlush();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Immediately sync-flushes all written data, regardless of limits
+     */
+    public synchronized void syncFlush() throws IOException {
+        ensureOpen();
+        cancelScheduledFlush();
+        gzipOutputStream.flush();
+        unflushedBytes = 0;
+        flushCount++;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            cancelScheduledFlush();
+            throwIfFailed();
+        } finally {
+            closed = true;
+            gzipOutputStream.close();
+        }
+    }
+
+    /**
+     * @return number of sync flushes performed
+     */
+    public synchronized long flushCount() {
+        return flushCount;
+    }
+
+    /**
+     * @return number of flush requests absorbed into a later flush
+     */
+    public synchronized long coalescedFlushCount() {
+        return coalescedFlushCount;
+    }
+
+    private void afterWrite(int length) throws IOException {
+        if (unflushedBytes == 0) {
+            firstUnflushedWriteNanos = ticker.read();
+        }
+        unflushedBytes += length;
+        if (!flushIfDue() && scheduler != null && scheduledFlush == null) {
+            long delayNanos = firstUnflushedWriteNanos + maxFlushLatencyNanos - ticker.read();
+            scheduledFlush = scheduler.schedule(this::onScheduledFlush, Math.max(delayNanos, 0), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private synchronized void onScheduledFlush() {
+        scheduledFlush = null;
+        if (closed || failure != null || unflushedBytes == 0) {
+            return;
+        }
+        try {
+            if (!flushIfDue() && scheduler != null) {
+                long delayNanos = firstUnflushedWriteNanos + maxFlushLatencyNanos - ticker.read();
+                scheduledFlush = scheduler.schedule(this::onScheduledFlush, Math.max(delayNanos, 0), TimeUnit.NANOSECONDS);
+            }
+        } catch (Throwable t) {
+            failure = t;
+        }
+    }
+
+    private void cancelScheduledFlush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        throwIfFailed();
+    }
+
+    private void throwIfFailed() throws IOException {
+        Throwable t = failure;
+        if (t != null) {
+            Throwables.throwIfInstanceOf(t, IOException.class);
+            Throwables.throwIfUnchecked(t);
+            throw new IOException(t);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.digitalascent.common.io;
+
+import com.google.common.io.ByteSink;
+import com.google.errorprone.annotations.MustBeClosed;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+final class CompressingByteSink extends ByteSink {
+    private final ByteSink delegate;
+    private final CompressionCodec codec;
+
+    CompressingByteSink(ByteSink delegate, CompressionCodec codec) {
+        this.delegate = checkNotNull(delegate, "delegate is required");
+        this.codec = checkNotNull(codec, "codec is required");
+    }
+
+    @MustBeClosed
+    @Override
+    public OutputStream openStream() throws IOException {
+        return codec.compressingStream(delegate.openBufferedStream());
+    }
+}
@@ -0,0 +1,45 @@
+package com.digitalascent.common.io;
+
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compression format that can wrap streams, sinks and sources.  Obtain instances from {@link CompressionCodecs}.
+ */
+public interface CompressionCodec {
+
+    /**
+     * Wraps the provided stream such that bytes written are compressed; closing the returned stream closes the
+     * provided stream.
+     *
+     * @param outputStream stream to write compressed bytes to
+     * @return stream accepting uncompressed bytes
+     */
+    OutputStream compressingStream(OutputStream outputStream) throws IOException;
+
+    /**
+     * Wraps the provided stream such that bytes read are decompressed; closing the returned stream closes the
+     * provided stream.
+     *
+     * @param inputStream stream of compressed bytes
+     * @return stream of uncompressed bytes
+     */
+    InputStream decompressingStream(InputStream inputStream) throws IOException;
+
+    /**
+     * @return conventional file extension for this format, including the leading '.'
+     */
+    String fileExtension();
+
+    default ByteSink compressingSink(ByteSink delegate) {
+        return new CompressingByteSink(delegate, this);
+    }
+
+    default ByteSource decompressingSource(ByteSource delegate) {
+        return new DecompressingByteSource(delegate, this);
+    }
+}
@@ -0,0 +1,58 @@
+package com.digitalascent.common.io;
+
+import com.digitalascent.common.base.StaticUtilityClass;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Factory methods for the supported compression codecs.
+ *
+ * gzip, zlib and raw deflate share the deflate algorithm and differ only in framing; LZ4 trades compression ratio
+ * for substantially faster compression and decompression, making it suitable for short-lived intermediate data.
+ */
+public final class CompressionCodecs {
+
+    public static CompressionCodec gzip() {
+        return gzip(GzipCompressionLevel.BALANCED);
+    }
+
+    public static CompressionCodec gzip(GzipCompressionLevel compressionLevel) {
+        checkNotNull(compressionLevel, "compressionLevel is required");
+        return new GzipCodec(compressionLevel);
+    }
+
+    /**
+     * Raw deflate stream (RFC 1951), without header or checksum
+     */
+    public static CompressionCodec deflate(GzipCompressionLevel compressionLevel) {
+        checkNotNull(compressionLevel, "compressionLevel is required");
+        return new DeflateCodec(compressionLevel, true);
+    }
+
+    /**
+     * zlib stream (RFC 1950) - deflate with a small header and Adler-32 checksum
+     */
+    public static CompressionCodec zlib(GzipCompressionLevel compressionLevel) {
+        checkNotNull(compressionLevel, "compressionLevel is required");
+        return new DeflateCodec(compressionLevel, false);
+    }
+
+    public static CompressionCodec lz4() {
+        return lz4(Lz4FrameOutputStream.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * LZ4 frame format codec
+     *
+     * @param blockSize maximum uncompressed block size; one of 64KB, 256KB, 1MB or 4MB
+     */
+    public static CompressionCodec lz4(int blockSize) {
+        checkArgument(Lz4FrameOutputStream.isValidBlockSize(blockSize), "Invalid LZ4 block size : %s", blockSize);
+        return new Lz4Codec(blockSize);
+    }
+
+    private CompressionCodecs() {
+        StaticUtilityClass.throwCannotInstantiateError(getClass());
+    }
+}
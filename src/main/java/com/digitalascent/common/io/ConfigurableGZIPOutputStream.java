@@ -25,6 +25,13 @@ public final class ConfigurableGZIPOutputStream extends GZIPOutputStream {
         setCompressionLevel( compressionLevel );
     }
 
+    /**
+     * Releases the deflater's native memory, for when close() was skipped or failed part way; idempotent
+     */
+    void endDeflater() {
+        def.end();
+    }
+
     private void setCompressionLevel(GzipCompressionLevel compressionLevel) {
         def.setLevel(compressionLevel.getValue());
     }
@@ -0,0 +1,25 @@
+package com.digitalascent.common.io;
+
+import com.google.common.io.ByteSource;
+import com.google.errorprone.annotations.MustBeClosed;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+final class DecompressingByteSource extends ByteSource {
+    private final ByteSource delegate;
+    private final CompressionCodec codec;
+
+    DecompressingByteSource(ByteSource delegate, CompressionCodec codec) {
+        this.delegate = checkNotNull(delegate, "delegate is required");
+        this.codec = checkNotNull(codec, "codec is required");
+    }
+
+    @MustBeClosed
+    @Override
+    public InputStream openStream() throws IOException {
+        return codec.decompressingStream(delegate.openBufferedStream());
+    }
+}
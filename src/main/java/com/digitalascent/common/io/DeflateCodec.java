@@ -0,0 +1,81 @@
+package com.digitalascent.common.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Deflate codec; raw (nowrap) or zlib-wrapped.  The Deflater / Inflater are owned by the streams and released on close,
+ * as the JDK streams only release instances they create themselves.
+ */
+final class DeflateCodec implements CompressionCodec {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final GzipCompressionLevel compressionLevel;
+    private final boolean raw;
+
+    DeflateCodec(GzipCompressionLevel compressionLevel, boolean raw) {
+        this.compressionLevel = checkNotNull(compressionLevel, "compressionLevel is required");
+        this.raw = raw;
+    }
+
+    @Override
+    public OutputStream compressingStream(OutputStream outputStream) {
+        checkNotNull(outputStream, "outputStream is required");
+        Deflater deflater = new Deflater(compressionLevel.getValue(), raw);
+        return new DeflaterOutputStream(outputStream, deflater, BUFFER_SIZE) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream decompressingStream(InputStream inputStream) {
+        checkNotNull(inputStream, "inputStream is required");
+        Inflater inflater = new Inflater(raw);
+        return new InflaterInputStream(inputStream, inflater, BUFFER_SIZE) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public String fileExtension() {
+        return raw ? ".deflate" : ".zz";
+    }
+
+    @Override
+    public String toString() {
+        return (raw ? "deflate(" : "zlib(") + compressionLevel + ")";
+    }
+}
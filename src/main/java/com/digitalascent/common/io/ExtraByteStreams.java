@@ -30,6 +30,18 @@ public final class ExtraByteStreams {
         return new ConfigurableGZIPOutputStream(outputStream,compressionLevel);
     }
 
+    /**
+     * Returns a gzip stream that compresses on a background thread, double-buffering writes
+     *
+     * @see AsyncGZIPOutputStream
+     */
+    public static OutputStream asyncGzipOutputStream(OutputStream outputStream, GzipCompressionLevel compressionLevel) throws IOException {
+        checkNotNull(outputStream, "outputStream is required");
+        checkNotNull(compressionLevel, "compressionLevel is required");
+
+        return new AsyncGZIPOutputStream(outputStream, compressionLevel);
+    }
+
     public static OutputStream closeSuppressingOutputStream(OutputStream outputStream) {
         checkNotNull(outputStream, "outputStream is required");
         return new FilterOutputStream( outputStream ) {
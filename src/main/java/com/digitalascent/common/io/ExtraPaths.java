@@ -9,6 +9,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static java.nio.file.Files.isDirectory;
 
 public final class ExtraPaths {
@@ -18,10 +19,21 @@ public final class ExtraPaths {
      * @param file
      */
     public static void compressFile(Path file) throws IOException {
+        compressFile(file, CompressionCodecs.gzip(GzipCompressionLevel.BEST_COMPRESSION));
+    }
+
+    /**
+     * Makes a compressed copy of the provided file using the supplied codec (adding the codec's file extension), deleting the original
+     *
+     * @param file
+     * @param codec
+     */
+    public static void compressFile(Path file, CompressionCodec codec) throws IOException {
         checkArgument(!isDirectory(file), "Files.isDirectory(file) : %s",  file);
+        checkNotNull(codec, "codec is required");
 
-        Path compressedFile = file.resolveSibling(file.toString() + ".gz");
-        try (OutputStream outputStream = ExtraByteStreams.gzipOutputStream(new BufferedOutputStream(Files.newOutputStream(compressedFile)), GzipCompressionLevel.BEST_COMPRESSION )) {
+        Path compressedFile = file.resolveSibling(file.getFileName().toString() + codec.fileExtension());
+        try (OutputStream outputStream = codec.compressingStream(new BufferedOutputStream(Files.newOutputStream(compressedFile)))) {
             Files.copy(file, outputStream);
             Files.delete( file );
         }
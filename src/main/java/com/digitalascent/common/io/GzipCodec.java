@@ -0,0 +1,36 @@
+package com.digitalascent.common.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+final class GzipCodec implements CompressionCodec {
+    private final GzipCompressionLevel compressionLevel;
+
+    GzipCodec(GzipCompressionLevel compressionLevel) {
+        this.compressionLevel = checkNotNull(compressionLevel, "compressionLevel is required");
+    }
+
+    @Override
+    public OutputStream compressingStream(OutputStream outputStream) throws IOException {
+        return new ConfigurableGZIPOutputStream(outputStream, compressionLevel);
+    }
+
+    @Override
+    public InputStream decompressingStream(InputStream inputStream) throws IOException {
+        return new GZIPInputStream(inputStream);
+    }
+
+    @Override
+    public String fileExtension() {
+        return ".gz";
+    }
+
+    @Override
+    public String toString() {
+        return "gzip(" + compressionLevel + ")";
+    }
+}
@@ -0,0 +1,52 @@
+package com.digitalascent.common.io;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Counters for a single stage of an I/O chain: units transferred (bytes for streams, chars for readers / writers),
+ * number of calls and time spent blocked in the wrapped delegate.  Uses striped counters, making it cheap to update
+ * from multiple threads.
+ *
+ * @see MeteredStreams
+ * @see IoPipelineMeter
+ */
+public final class IoMeter {
+    private final String name;
+    private final LongAdder transferred = new LongAdder();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+
+    public IoMeter(String name) {
+        this.name = checkNotNull(name, "name is required");
+    }
+
+    public String name() {
+        return name;
+    }
+
+    void record(long units, long nanos) {
+        if (units > 0) {
+            transferred.add(units);
+        }
+        calls.increment();
+        blockedNanos.add(nanos);
+    }
+
+    public IoMeterSnapshot snapshot() {
+        long blocked = blockedNanos.sum();
+        return new IoMeterSnapshot(name, transferred.sum(), calls.sum(), blocked, blocked);
+    }
+
+    public void reset() {
+        transferred.reset();
+        calls.reset();
+        blockedNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
@@ -0,0 +1,78 @@
+package com.digitalascent.common.io;
+
+import java.time.Duration;
+
+/**
+ * Point-in-time values of an {@link IoMeter}.
+ */
+public final class IoMeterSnapshot {
+    private final String name;
+    private final long transferred;
+    private final long calls;
+    private final long blockedNanos;
+    private final long exclusiveNanos;
+
+    IoMeterSnapshot(String name, long transferred, long calls, long blockedNanos, long exclusiveNanos) {
+        this.name = name;
+        this.transferred = transferred;
+        this.calls = calls;
+        this.blockedNanos = blockedNanos;
+        this.exclusiveNanos = exclusiveNanos;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return bytes (streams) or chars (readers / writers) transferred
+     */
+    public long transferred() {
+        return transferred;
+    }
+
+    public long calls() {
+        return calls;
+    }
+
+    /**
+     * @return total time spent in the delegate, including any downstream stages
+     */
+    public Duration blockedTime() {
+        return Duration.ofNanos(blockedNanos);
+    }
+
+    /**
+     * @return time spent in this stage alone, excluding the next stage of the pipeline (if any)
+     */
+    public Duration exclusiveTime() {
+        return Duration.ofNanos(exclusiveNanos);
+    }
+
+    /**
+     * @return units transferred per second of blocked time, or 0 if no time has been recorded
+     */
+    public double throughputPerSecond() {
+        return blockedNanos == 0 ? 0 : transferred * 1_000_000_000.0 / blockedNanos;
+    }
+
+    IoMeterSnapshot withExclusiveNanos(long nanos) {
+        return new IoMeterSnapshot(name, transferred, calls, blockedNanos, nanos);
+    }
+
+    long exclusiveNanos() {
+        return exclusiveNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "IoMeterSnapshot{" +
+                "name='" + name + '\'' +
+                ", transferred=" + transferred +
+                ", calls=" + calls +
+                ", blockedTime=" + blockedTime() +
+                ", exclusiveTime=" + exclusiveTime() +
+                ", throughputPerSecond=" + throughputPerSecond() +
+                '}';
+    }
+}
@@ -0,0 +1,54 @@
+package com.digitalascent.common.io;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Meters for the stages of a nested I/O chain, registered outermost first (e.g. "json" writer, then "gzip", then
+ * "file").  As each stage's blocked time includes the stages it wraps, snapshots derive each stage's exclusive time
+ * by subtracting the next stage's blocked time; the stage with the largest exclusive time is the bottleneck.
+ * <p>
+ * Example usage:
+ * <pre>
+ * IoPipelineMeter pipeline = new IoPipelineMeter();
+ * IoMeter json = pipeline.stage("json");
+ * IoMeter gzip = pipeline.stage("gzip");
+ * IoMeter file = pipeline.stage("file");
+ * OutputStream fileStream = MeteredStreams.metered(Files.newOutputStream(path), file);
+ * OutputStream gzipStream = MeteredStreams.metered(ExtraByteStreams.gzipOutputStream(fileStream), gzip);
+ * Writer writer = MeteredStreams.metered(new OutputStreamWriter(gzipStream, UTF_8), json);
+ * ...
+ * IoMeterSnapshot bottleneck = pipeline.snapshot().bottleneck();
+ * </pre>
+ */
+public final class IoPipelineMeter {
+    private final List<IoMeter> stages = new CopyOnWriteArrayList<>();
+
+    /**
+     * Registers the next (inner) stage of the pipeline
+     */
+    public IoMeter stage(String name) {
+        IoMeter meter = new IoMeter(name);
+        stages.add(meter);
+        return meter;
+    }
+
+    public IoPipelineSnapshot snapshot() {
+        // innermost first, such that the outer stage's blocked time is read after (and so includes) the inner stage's
+        ImmutableList<IoMeter> meters = ImmutableList.copyOf(stages).reverse();
+        IoMeterSnapshot[] snapshots = new IoMeterSnapshot[meters.size()];
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = meters.get(i).snapshot();
+        }
+
+        ImmutableList.Builder<IoMeterSnapshot> builder = ImmutableList.builder();
+        for (int i = snapshots.length - 1; i >= 0; i--) {
+            long innerNanos = i == 0 ? 0 : snapshots[i - 1].blockedTime().toNanos();
+            long exclusiveNanos = Math.max(0, snapshots[i].blockedTime().toNanos() - innerNanos);
+            builder.add(snapshots[i].withExclusiveNanos(exclusiveNanos));
+        }
+        return new IoPipelineSnapshot(builder.build());
+    }
+}
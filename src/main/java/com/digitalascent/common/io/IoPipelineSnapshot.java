@@ -0,0 +1,38 @@
+package com.digitalascent.common.io;
+
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nullable;
+import java.util.Comparator;
+
+/**
+ * Point-in-time values of each stage of an {@link IoPipelineMeter}, outermost stage first.
+ */
+public final class IoPipelineSnapshot {
+    private final ImmutableList<IoMeterSnapshot> stages;
+
+    IoPipelineSnapshot(ImmutableList<IoMeterSnapshot> stages) {
+        this.stages = stages;
+    }
+
+    public ImmutableList<IoMeterSnapshot> stages() {
+        return stages;
+    }
+
+    /**
+     * @return the stage with the largest exclusive time, or null if there are no stages
+     */
+    @Nullable
+    public IoMeterSnapshot bottleneck() {
+        return stages.stream()
+                .max(Comparator.comparingLong(IoMeterSnapshot::exclusiveNanos))
+                .orElse(null);
+    }
+
+    @Override
+    public String toString() {
+        return "IoPipelineSnapshot{" +
+                "stages=" + stages +
+                '}';
+    }
+}
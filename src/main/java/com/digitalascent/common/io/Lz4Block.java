@@ -0,0 +1,222 @@
+package com.digitalascent.common.io;
+
+import com.digitalascent.common.base.StaticUtilityClass;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pure-Java implementation of the LZ4 block format (greedy, single-probe hash table; equivalent to the reference
+ * "fast" compressor at acceleration 1).
+ */
+final class Lz4Block {
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int RUN_MASK = 15;
+    private static final int SKIP_TRIGGER = 6;
+
+    static final int HASH_LOG = 12;
+    static final int HASH_TABLE_SIZE = 1 << HASH_LOG;
+
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses src into dst, which must have at least maxCompressedLength(srcLength) bytes available.
+     *
+     * @param hashTable scratch table of HASH_TABLE_SIZE entries; contents are overwritten
+     * @return number of bytes written to dst
+     */
+    static int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int[] hashTable) {
+        final int srcEnd = srcOffset + srcLength;
+        final int matchFindLimit = srcEnd - MF_LIMIT;
+        final int matchLimit = srcEnd - LAST_LITERALS;
+
+        int sourcePosition = srcOffset;
+        int destinationPosition = dstOffset;
+        int anchor = srcOffset;
+
+        if (srcLength >= MF_LIMIT + 1) {
+            Arrays.fill(hashTable, -1);
+            int searchCount = 1 << SKIP_TRIGGER;
+            while (sourcePosition < matchFindLimit) {
+                int sequence = readInt(src, sourcePosition);
+                int hash = hash(sequence);
+                int reference = hashTable[hash];
+                hashTable[hash] = sourcePosition;
+
+                if (reference < 0 || sourcePosition - reference > MAX_DISTANCE || readInt(src, reference) != sequence) {
+                    // accelerate through incompressible data
+                    sourcePosition += searchCount++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                searchCount = 1 << SKIP_TRIGGER;
+
+                // extend the match backwards over pending literals
+                while (sourcePosition > anchor && reference > srcOffset && src[sourcePosition - 1] == src[reference - 1]) {
+                    sourcePosition--;
+                    reference--;
+                }
+
+                int matchLength = MIN_MATCH;
+                while (sourcePosition + matchLength < matchLimit && src[sourcePosition + matchLength] == src[reference + matchLength]) {
+                    matchLength++;
+                }
+
+                destinationPosition = writeSequence(src, anchor, sourcePosition - anchor, dst, destinationPosition,
+                        sourcePosition - reference, matchLength);
+                sourcePosition += matchLength;
+                anchor = sourcePosition;
+            }
+        }
+
+        // remaining bytes are emitted as a literal-only final sequence
+        return writeLastLiterals(src, anchor, srcEnd - anchor, dst, destinationPosition) - dstOffset;
+    }
+
+    /**
+     * Decompresses a complete LZ4 block.
+     *
+     * @return number of bytes written to dst
+     * @throws IOException if the block is malformed or would overflow dst
+     */
+    static int decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) throws IOException {
+        final int srcEnd = srcOffset + srcLength;
+        final int dstEnd = dstOffset + dstLength;
+        int sourcePosition = srcOffset;
+        int destinationPosition = dstOffset;
+
+        try {
+            while (true) {
+                int token = src[sourcePosition++] & 0xFF;
+
+                int literalLength = token >>> 4;
+                if (literalLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[sourcePosition++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+                if (literalLength > srcEnd - sourcePosition || literalLength > dstEnd - destinationPosition) {
+                    throw malformed(sourcePosition);
+                }
+                System.arraycopy(src, sourcePosition, dst, destinationPosition, literalLength);
+                sourcePosition += literalLength;
+                destinationPosition += literalLength;
+
+                if (sourcePosition == srcEnd) {
+                    return destinationPosition - dstOffset;
+                }
+
+                int offset = (src[sourcePosition] & 0xFF) | ((src[sourcePosition + 1] & 0xFF) << 8);
+                sourcePosition += 2;
+                if (offset == 0 || offset > destinationPosition - dstOffset) {
+                    throw malformed(sourcePosition);
+                }
+
+                int matchLength = token & RUN_MASK;
+                if (matchLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[sourcePosition++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                if (matchLength > dstEnd - destinationPosition) {
+                    throw malformed(sourcePosition);
+                }
+
+                int matchPosition = destinationPosition - offset;
+                if (offset >= matchLength) {
+                    System.arraycopy(dst, matchPosition, dst, destinationPosition, matchLength);
+                    destinationPosition += matchLength;
+                } else {
+                    // overlapping copy replicates the preceding bytes
+                    for (int i = 0; i < matchLength; i++) {
+                        dst[destinationPosition++] = dst[matchPosition++];
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw malformed(sourcePosition);
+        }
+    }
+
+    private static int writeSequence(byte[] src, int literalOffset, int literalLength, byte[] dst, int destinationPosition,
+                                     int offset, int matchLength) {
+        int tokenPosition = destinationPosition++;
+        int token;
+        if (literalLength >= RUN_MASK) {
+            token = RUN_MASK << 4;
+            destinationPosition = writeLength(dst, destinationPosition, literalLength - RUN_MASK);
+        } else {
+            token = literalLength << 4;
+        }
+        System.arraycopy(src, literalOffset, dst, destinationPosition, literalLength);
+        destinationPosition += literalLength;
+
+        dst[destinationPosition++] = (byte) offset;
+        dst[destinationPosition++] = (byte) (offset >>> 8);
+
+        int encodedMatchLength = matchLength - MIN_MATCH;
+        if (encodedMatchLength >= RUN_MASK) {
+            token |= RUN_MASK;
+            destinationPosition = writeLength(dst, destinationPosition, encodedMatchLength - RUN_MASK);
+        } else {
+            token |= encodedMatchLength;
+        }
+        dst[tokenPosition] = (byte) token;
+        return destinationPosition;
+    }
+
+    private static int writeLastLiterals(byte[] src, int literalOffset, int literalLength, byte[] dst, int destinationPosition) {
+        if (literalLength >= RUN_MASK) {
+            dst[destinationPosition++] = (byte) (RUN_MASK << 4);
+            destinationPosition = writeLength(dst, destinationPosition, literalLength - RUN_MASK);
+        } else {
+            dst[destinationPosition++] = (byte) (literalLength << 4);
+        }
+        System.arraycopy(src, literalOffset, dst, destinationPosition, literalLength);
+        return destinationPosition + literalLength;
+    }
+
+    private static int writeLength(byte[] dst, int destinationPosition, int length) {
+        while (length >= 255) {
+            dst[destinationPosition++] = (byte) 255;
+            length -= 255;
+        }
+        dst[destinationPosition++] = (byte) length;
+        return destinationPosition;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    static int readInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF)
+                | ((buffer[offset + 1] & 0xFF) << 8)
+                | ((buffer[offset + 2] & 0xFF) << 16)
+                | ((buffer[offset + 3] & 0xFF) << 24);
+    }
+
+    static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static IOException malformed(int position) {
+        return new IOException("Malformed LZ4 block at input offset " + position);
+    }
+
+    private Lz4Block() {
+        StaticUtilityClass.throwCannotInstantiateError(getClass());
+    }
+}
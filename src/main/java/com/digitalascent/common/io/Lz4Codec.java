@@ -0,0 +1,33 @@
+package com.digitalascent.common.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+final class Lz4Codec implements CompressionCodec {
+    private final int blockSize;
+
+    Lz4Codec(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public OutputStream compressingStream(OutputStream outputStream) throws IOException {
+        return new Lz4FrameOutputStream(outputStream, blockSize);
+    }
+
+    @Override
+    public InputStream decompressingStream(InputStream inputStream) {
+        return new Lz4FrameInputStream(inputStream);
+    }
+
+    @Override
+    public String fileExtension() {
+        return ".lz4";
+    }
+
+    @Override
+    public String toString() {
+        return "lz4(" + blockSize + ")";
+    }
+}
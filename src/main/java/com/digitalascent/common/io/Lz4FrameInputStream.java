@@ -0,0 +1,232 @@
+package com.digitalascent.common.io;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.digitalascent.common.io.Lz4FrameOutputStream.FLG_BLOCK_CHECKSUM;
+import static com.digitalascent.common.io.Lz4FrameOutputStream.FLG_CONTENT_CHECKSUM;
+import static com.digitalascent.common.io.Lz4FrameOutputStream.FLG_CONTENT_SIZE;
+import static com.digitalascent.common.io.Lz4FrameOutputStream.FLG_DICTIONARY_ID;
+import static com.digitalascent.common.io.Lz4FrameOutputStream.MAGIC;
+import static com.digitalascent.common.io.Lz4FrameOutputStream.UNCOMPRESSED_BLOCK_FLAG;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads the LZ4 frame format, including concatenated and skippable frames.  Block and content checksums are verified
+ * when present; dictionaries and linked (dependent) blocks are not supported.
+ *
+ * Not thread safe.
+ */
+final class Lz4FrameInputStream extends FilterInputStream {
+    private static final int SKIPPABLE_MAGIC_MASK = 0xFFFFFFF0;
+    private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+
+    private final byte[] scratch = new byte[8];
+    private byte[] compressedBuffer = new byte[0];
+    private byte[] buffer = new byte[0];
+    private int bufferPosition;
+    private int bufferLength;
+
+    private int frameFlags;
+    private boolean inFrame;
+    private boolean finished;
+    private XxHash32 contentChecksum;
+
+    Lz4FrameInputStream(InputStream in) {
+        super(checkNotNull(in, "in is required"));
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return buffer[bufferPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if ((offset | length | (offset + length) | (bytes.length - (offset + length))) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+        int toCopy = Math.min(length, bufferLength - bufferPosition);
+        System.arraycopy(buffer, bufferPosition, bytes, offset, toCopy);
+        bufferPosition += toCopy;
+        return toCopy;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && ensureData()) {
+            int toSkip = (int) Math.min(n - skipped, bufferLength - bufferPosition);
+            bufferPosition += toSkip;
+            skipped += toSkip;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return bufferLength - bufferPosition;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        // not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    private boolean ensureData() throws IOException {
+        while (bufferPosition == bufferLength) {
+            if (finished) {
+                return false;
+            }
+            if (!inFrame) {
+                if (!readFrameHeader()) {
+                    finished = true;
+                    return false;
+                }
+                continue;
+            }
+            readBlock();
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the end of the underlying stream was reached before a frame started
+     */
+    private boolean readFrameHeader() throws IOException {
+        while (true) {
+            int read = ByteStreams.read(in, scratch, 0, 4);
+            if (read == 0) {
+                return false;
+            }
+            if (read < 4) {
+                throw new EOFException("Truncated LZ4 frame magic number");
+            }
+            int magic = Lz4Block.readInt(scratch, 0);
+            if ((magic & SKIPPABLE_MAGIC_MASK) == SKIPPABLE_MAGIC) {
+                readFully(scratch, 0, 4);
+                ByteStreams.skipFully(in, Lz4Block.readInt(scratch, 0) & 0xFFFFFFFFL);
+                continue;
+            }
+            if (magic != MAGIC) {
+                throw new IOException(String.format("Not an LZ4 frame; magic number 0x%08X", magic));
+            }
+            break;
+        }
+
+        readFully(scratch, 0, 2);
+        frameFlags = scratch[0] & 0xFF;
+        int blockDescriptor = scratch[1] & 0xFF;
+        if ((frameFlags & 0xC0) != Lz4FrameOutputStream.FLG_VERSION) {
+            throw new IOException("Unsupported LZ4 frame version : " + (frameFlags >>> 6));
+        }
+        if ((frameFlags & FLG_DICTIONARY_ID) != 0) {
+            throw new IOException("LZ4 frames with dictionaries are not supported");
+        }
+        if ((frameFlags & Lz4FrameOutputStream.FLG_BLOCK_INDEPENDENCE) == 0) {
+            throw new IOException("LZ4 frames with linked blocks are not supported");
+        }
+        int blockSizeCode = (blockDescriptor >>> 4) & 0x07;
+        if (blockSizeCode < 4) {
+            throw new IOException("Invalid LZ4 block size code : " + blockSizeCode);
+        }
+        int maxBlockSize = 1 << (8 + 2 * blockSizeCode);
+
+        XxHash32 headerChecksum = new XxHash32(0);
+        headerChecksum.update(scratch, 0, 2);
+        if ((frameFlags & FLG_CONTENT_SIZE) != 0) {
+            readFully(scratch, 0, 8);
+            headerChecksum.update(scratch, 0, 8);
+        }
+        int expectedHeaderChecksum = (int) ((headerChecksum.getValue() >>> 8) & 0xFF);
+        int headerChecksumValue = readByte();
+        if (headerChecksumValue != expectedHeaderChecksum) {
+            throw new IOException("LZ4 frame header checksum mismatch");
+        }
+
+        if (buffer.length < maxBlockSize) {
+            buffer = new byte[maxBlockSize];
+            compressedBuffer = new byte[maxBlockSize];
+        }
+        contentChecksum = (frameFlags & FLG_CONTENT_CHECKSUM) != 0 ? new XxHash32(0) : null;
+        inFrame = true;
+        return true;
+    }
+
+    private void readBlock() throws IOException {
+        readFully(scratch, 0, 4);
+        int blockHeader = Lz4Block.readInt(scratch, 0);
+        if (blockHeader == 0) {
+            endFrame();
+            return;
+        }
+
+        boolean uncompressed = (blockHeader & UNCOMPRESSED_BLOCK_FLAG) != 0;
+        int blockLength = blockHeader & ~UNCOMPRESSED_BLOCK_FLAG;
+        if (blockLength > buffer.length) {
+            throw new IOException("LZ4 block length exceeds maximum block size : " + blockLength);
+        }
+
+        byte[] blockData = uncompressed ? buffer : compressedBuffer;
+        readFully(blockData, 0, blockLength);
+        if ((frameFlags & FLG_BLOCK_CHECKSUM) != 0) {
+            readFully(scratch, 0, 4);
+            if (Lz4Block.readInt(scratch, 0) != XxHash32.hash(blockData, 0, blockLength, 0)) {
+                throw new IOException("LZ4 block checksum mismatch");
+            }
+        }
+
+        bufferLength = uncompressed ? blockLength : Lz4Block.decompress(compressedBuffer, 0, blockLength, buffer, 0, buffer.length);
+        bufferPosition = 0;
+        if (contentChecksum != null) {
+            contentChecksum.update(buffer, 0, bufferLength);
+        }
+    }
+
+    private void endFrame() throws IOException {
+        if (contentChecksum != null) {
+            readFully(scratch, 0, 4);
+            if (Lz4Block.readInt(scratch, 0) != (int) contentChecksum.getValue()) {
+                throw new IOException("LZ4 content checksum mismatch");
+            }
+        }
+        inFrame = false;
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Truncated LZ4 frame");
+        }
+        return b;
+    }
+
+    private void readFully(byte[] bytes, int offset, int length) throws IOException {
+        if (ByteStreams.read(in, bytes, offset, length) != length) {
+            throw new EOFException("Truncated LZ4 frame");
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.digitalascent.common.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes the LZ4 frame format (independent blocks, no block or content checksums), readable by the reference
+ * 'lz4' tool and {@link Lz4FrameInputStream}.
+ *
+ * Not thread safe.
+ */
+final class Lz4FrameOutputStream extends FilterOutputStream {
+    static final int MAGIC = 0x184D2204;
+    static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    static final int FLG_VERSION = 0x40;
+    static final int FLG_BLOCK_INDEPENDENCE = 0x20;
+    static final int FLG_BLOCK_CHECKSUM = 0x10;
+    static final int FLG_CONTENT_SIZE = 0x08;
+    static final int FLG_CONTENT_CHECKSUM = 0x04;
+    static final int FLG_DICTIONARY_ID = 0x01;
+    static final int UNCOMPRESSED_BLOCK_FLAG = 0x80000000;
+
+    private final byte[] buffer;
+    private final byte[] compressedBuffer;
+    private final int[] hashTable = new int[Lz4Block.HASH_TABLE_SIZE];
+    private int bufferLength;
+    private boolean closed;
+
+    Lz4FrameOutputStream(OutputStream out, int blockSize) throws IOException {
+        super(checkNotNull(out, "out is required"));
+        this.buffer = new byte[blockSize];
+        this.compressedBuffer = new byte[4 + Lz4Block.maxCompressedLength(blockSize)];
+        writeHeader(blockSize);
+    }
+
+    static boolean isValidBlockSize(int blockSize) {
+        return blockSizeCode(blockSize) > 0;
+    }
+
+    static int blockSizeCode(int blockSize) {
+        switch (blockSize) {
+            case 64 * 1024:
+                return 4;
+            case 256 * 1024:
+                return 5;
+            case 1024 * 1024:
+                return 6;
+            case 4 * 1024 * 1024:
+                return 7;
+            default:
+                return -1;
+        }
+    }
+
+    private void writeHeader(int blockSize) throws IOException {
+        byte[] header = new byte[7];
+        Lz4Block.writeInt(header, 0, MAGIC);
+        header[4] = (byte) (FLG_VERSION | FLG_BLOCK_INDEPENDENCE);
+        header[5] = (byte) (blockSizeCode(blockSize) << 4);
+        header[6] = (byte) (XxHash32.hash(header, 4, 2, 0) >>> 8);
+        out.write(header);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (bufferLength == buffer.length) {
+            writeBlock();
+        }
+        buffer[bufferLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        if ((offset | length | (offset + length) | (bytes.length - (offset + length))) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (length > 0) {
+            if (bufferLength == buffer.length) {
+                writeBlock();
+            }
+            int toCopy = Math.min(length, buffer.length - bufferLength);
+            System.arraycopy(bytes, offset, buffer, bufferLength, toCopy);
+            bufferLength += toCopy;
+            offset += toCopy;
+            length -= toCopy;
+        }
+    }
+
+    /**
+     * Emits any buffered bytes as a (possibly short) block before flushing the underlying stream
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (bufferLength > 0) {
+            writeBlock();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (bufferLength > 0) {
+                writeBlock();
+            }
+            byte[] endMark = new byte[4];
+            out.write(endMark);
+            out.flush();
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        int compressedLength = Lz4Block.compress(buffer, 0, bufferLength, compressedBuffer, 4, hashTable);
+        if (compressedLength >= bufferLength) {
+            // incompressible; store as-is
+            Lz4Block.writeInt(compressedBuffer, 0, bufferLength | UNCOMPRESSED_BLOCK_FLAG);
+            out.write(compressedBuffer, 0, 4);
+            out.write(buffer, 0, bufferLength);
+        } else {
+            Lz4Block.writeInt(compressedBuffer, 0, compressedLength);
+            out.write(compressedBuffer, 0, 4 + compressedLength);
+        }
+        bufferLength = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.digitalascent.common.io;
+
+import com.digitalascent.common.base.StaticUtilityClass;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.FilterReader;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Wraps streams, readers and writers such that each call to the delegate is recorded in an {@link IoMeter}.
+ */
+public final class MeteredStreams {
+
+    public static InputStream metered(InputStream inputStream, IoMeter meter) {
+        checkNotNull(inputStream, "inputStream is required");
+        checkNotNull(meter, "meter is required");
+        return new MeteredInputStream(inputStream, meter);
+    }
+
+    public static OutputStream metered(OutputStream outputStream, IoMeter meter) {
+        checkNotNull(outputStream, "outputStream is required");
+        checkNotNull(meter, "meter is required");
+        return new MeteredOutputStream(outputStream, meter);
+    }
+
+    public static Reader metered(Reader reader, IoMeter meter) {
+        checkNotNull(reader, "reader is required");
+        checkNotNull(meter, "meter is required");
+        return new MeteredReader(reader, meter);
+    }
+
+    public static Writer metered(Writer writer, IoMeter meter) {
+        checkNotNull(writer, "writer is required");
+        checkNotNull(meter, "meter is required");
+        return new MeteredWriter(writer, meter);
+    }
+
+    private MeteredStreams() {
+        StaticUtilityClass.throwCannotInstantiateError(getClass());
+    }
+
+    private static final class MeteredInputStream extends FilterInputStream {
+        private final IoMeter meter;
+
+        MeteredInputStream(InputStream in, IoMeter meter) {
+            super(in);
+            this.meter = meter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = in.read();
+            meter.record(b < 0 ? 0 : 1, System.nanoTime() - start);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            int read = in.read(bytes, offset, length);
+            meter.record(Math.max(read, 0), System.nanoTime() - start);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long start = System.nanoTime();
+            long skipped = in.skip(n);
+            meter.record(0, System.nanoTime() - start);
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = System.nanoTime();
+            try {
+                in.close();
+            } finally {
+                meter.record(0, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static final class MeteredOutputStream extends FilterOutputStream {
+        private final IoMeter meter;
+
+        MeteredOutputStream(OutputStream out, IoMeter meter) {
+            super(out);
+            this.meter = meter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            out.write(b);
+            meter.record(1, System.nanoTime() - start);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            out.write(bytes, offset, length);
+            meter.record(length, System.nanoTime() - start);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = System.nanoTime();
+            out.flush();
+            meter.record(0, System.nanoTime() - start);
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = System.nanoTime();
+            try {
+                out.close();
+            } finally {
+                meter.record(0, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static final class MeteredReader extends FilterReader {
+        private final IoMeter meter;
+
+        MeteredReader(Reader in, IoMeter meter) {
+            super(in);
+            this.meter = meter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int c = in.read();
+            meter.record(c < 0 ? 0 : 1, System.nanoTime() - start);
+            return c;
+        }
+
+        @Override
+        public int read(char[] chars, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            int read = in.read(chars, offset, length);
+            meter.record(Math.max(read, 0), System.nanoTime() - start);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long start = System.nanoTime();
+            long skipped = in.skip(n);
+            meter.record(0, System.nanoTime() - start);
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = System.nanoTime();
+            try {
+                in.close();
+            } finally {
+                meter.record(0, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static final class MeteredWriter extends FilterWriter {
+        private final IoMeter meter;
+
+        MeteredWriter(Writer out, IoMeter meter) {
+            super(out);
+            this.meter = meter;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            long start = System.nanoTime();
+            out.write(c);
+            meter.record(1, System.nanoTime() - start);
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            out.write(chars, offset, length);
+            meter.record(length, System.nanoTime() - start);
+        }
+
+        @Override
+        public void write(String string, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            out.write(string, offset, length);
+            meter.record(length, System.nanoTime() - start);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = System.nanoTime();
+            out.flush();
+            meter.record(0, System.nanoTime() - start);
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = System.nanoTime();
+            try {
+                out.close();
+            } finally {
+                meter.record(0, System.nanoTime() - start);
+            }
+        }
+    }
+}
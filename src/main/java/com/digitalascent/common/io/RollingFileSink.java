@@ -0,0 +1,403 @@
+package com.digitalascent.common.io;
+
+import com.digitalascent.common.concurrent.ExtraThreads;
+import com.digitalascent.logger.FluentLogger;
+import com.google.common.base.Ticker;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * OutputStream writing to a sequence of segment files, rotating to a new segment by size and/or age.  Closed segments
+ * are compressed on a bounded background pool, never on the writing thread; when the pool's queue is full the writer
+ * waits for room, bounding the backlog - see {@link #queueDepth()}, {@link #maxCompressionLag()} and
+ * {@link #compressionWait()} to tell whether compression keeps up.
+ *
+ * Segments are named 'baseName-yyyyMMdd'T'HHmmss'Z'-sequence.extension' and written through a FileChannel; the
+ * sequence skips names already taken, e.g. by another sink with the same base name or a restarted process.
+ */
+public final class RollingFileSink extends OutputStream {
+    private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+    private static final DateTimeFormatter SEGMENT_TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+    private final Path directory;
+    private final String baseName;
+    private final String extension;
+    private final long maxSegmentBytes;
+    private final long maxSegmentAgeNanos;
+    @Nullable
+    private final CompressionCodec codec;
+    @Nullable
+    private final ThreadPoolExecutor compressionExecutor;
+    private final Ticker ticker;
+    private final ByteBuffer buffer;
+
+    private final AtomicInteger queuedSegments = new AtomicInteger();
+    private final AtomicLong lastCompressionLagNanos = new AtomicLong();
+    private final AtomicLong maxCompressionLagNanos = new AtomicLong();
+    private final LongAdder compressedSegments = new LongAdder();
+    private final LongAdder compressionFailures = new LongAdder();
+    private final LongAdder compressionWaitNanos = new LongAdder();
+
+    private long segmentSequence;
+    @Nullable
+    private FileChannel channel;
+    @Nullable
+    private Path segmentPath;
+    private long segmentPosition;
+    private long segmentStartNanos;
+    private boolean closed;
+
+    public static Builder builder(Path directory, String baseName) {
+        return new Builder(directory, baseName);
+    }
+
+    private RollingFileSink(Builder builder) {
+        this.directory = builder.directory;
+        this.baseName = builder.baseName;
+        this.extension = builder.extension;
+        this.maxSegmentBytes = builder.maxSegmentBytes;
+        this.maxSegmentAgeNanos = builder.maxSegmentAge == null ? Long.MAX_VALUE : builder.maxSegmentAge.toNanos();
+        this.codec = builder.codec;
+        this.ticker = builder.ticker;
+        this.buffer = ByteBuffer.allocate(builder.bufferSize);
+        if (codec == null) {
+            compressionExecutor = null;
+        } else {
+            compressionExecutor = new ThreadPoolExecutor(builder.compressionThreads, builder.compressionThreads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(builder.maxQueuedSegments),
+                    ExtraThreads.defaultThreadFactory("RollingFileSink-compression"),
+                    this::awaitQueueSpace);
+        }
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureSegment(1);
+        if (!buffer.hasRemaining()) {
+            writeBuffer();
+        }
+        buffer.put((byte) b);
+        segmentPosition++;
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        if ((offset | length | (offset + length) | (bytes.length - (offset + length))) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (length == 0) {
+            return;
+        }
+        ensureSegment(length);
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                writeBuffer();
+            }
+            int toCopy = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, toCopy);
+            segmentPosition += toCopy;
+            offset += toCopy;
+            length -= toCopy;
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        if (channel != null) {
+            writeBuffer();
+        }
+    }
+
+    /**
+     * Closes the current segment and starts a new one on the next write
+     */
+    public synchronized void rotate() throws IOException {
+        ensureOpen();
+        closeSegment();
+    }
+
+    /**
+     * Closes the current segment and waits for all queued compression to complete
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            closeSegment();
+        } finally {
+            if (compressionExecutor != null) {
+                compressionExecutor.shutdown();
+                awaitCompression();
+            }
+        }
+    }
+
+    /**
+     * @return number of closed segments waiting for, or undergoing, compression
+     */
+    public int queueDepth() {
+        return queuedSegments.get();
+    }
+
+    /**
+     * @return time between the most recently compressed segment being closed and its compression completing
+     */
+    public Duration lastCompressionLag() {
+        return Duration.ofNanos(lastCompressionLagNanos.get());
+    }
+
+    public Duration maxCompressionLag() {
+        return Duration.ofNanos(maxCompressionLagNanos.get());
+    }
+
+    public long compressedSegments() {
+        return compressedSegments.sum();
+    }
+
+    public long compressionFailures() {
+        return compressionFailures.sum();
+    }
+
+    /**
+     * @return total time the writer spent waiting for room in the compression queue
+     */
+    public Duration compressionWait() {
+        return Duration.ofNanos(compressionWaitNanos.sum());
+    }
+
+    @Nullable
+    public synchronized Path currentSegment() {
+        return segmentPath;
+    }
+
+    private void ensureSegment(int length) throws IOException {
+        ensureOpen();
+        if (channel != null && segmentPosition > 0
+                && (segmentPosition + length > maxSegmentBytes || ticker.read() - segmentStartNanos >= maxSegmentAgeNanos)) {
+            closeSegment();
+        }
+        if (channel == null) {
+            openSegment();
+        }
+    }
+
+    private void openSegment() throws IOException {
+        String timestamp = SEGMENT_TIMESTAMP_FORMAT.format(ZonedDateTime.now(ZoneOffset.UTC));
+        while (true) {
+            Path path = directory.resolve(String.format("%s-%s-%06d%s", baseName, timestamp, ++segmentSequence, extension));
+            if (codec != null && Files.exists(path.resolveSibling(path.getFileName() + codec.fileExtension()))) {
+                continue;
+            }
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                segmentPath = path;
+                break;
+            } catch (FileAlreadyExistsException e) {
+                // taken by another sink, or an earlier run, within the same second; try the next sequence number
+            }
+        }
+        segmentPosition = 0;
+        segmentStartNanos = ticker.read();
+    }
+
+    private void closeSegment() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        Path closedSegment = segmentPath;
+        try {
+            writeBuffer();
+        } finally {
+            channel.close();
+            channel = null;
+            segmentPath = null;
+        }
+        submitCompression(closedSegment);
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void submitCompression(Path segment) {
+        if (compressionExecutor == null || codec == null) {
+            return;
+        }
+        long submittedNanos = ticker.read();
+        queuedSegments.incrementAndGet();
+        try {
+            compressionExecutor.execute(() -> {
+                try {
+                    ExtraPaths.compressFile(segment, codec);
+                    compressedSegments.increment();
+                } catch (IOException | RuntimeException e) {
+                    compressionFailures.increment();
+                    logger.atError().withCause(e).log("Unable to compress segment %s", segment);
+                } finally {
+                    queuedSegments.decrementAndGet();
+                    long lagNanos = ticker.read() - submittedNanos;
+                    lastCompressionLagNanos.set(lagNanos);
+                    maxCompressionLagNanos.accumulateAndGet(lagNanos, Math::max);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queuedSegments.decrementAndGet();
+            compressionFailures.increment();
+            logger.atError().withCause(e).log("Unable to queue segment %s for compression; left uncompressed", segment);
+        }
+    }
+
+    /**
+     * Rejection handler for the compression pool: waits for room in its queue rather than compressing on the writer
+     */
+    private void awaitQueueSpace(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Compression pool is shut down");
+        }
+        long waitStartNanos = ticker.read();
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted waiting for room in the compression queue", e);
+        } finally {
+            compressionWaitNanos.add(ticker.read() - waitStartNanos);
+        }
+    }
+
+    private void awaitCompression() {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (compressionExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    public static final class Builder {
+        private final Path directory;
+        private final String baseName;
+        private String extension = ".log";
+        private long maxSegmentBytes = Long.MAX_VALUE;
+        @Nullable
+        private Duration maxSegmentAge;
+        @Nullable
+        private CompressionCodec codec;
+        private int compressionThreads = 1;
+        private int maxQueuedSegments = 4;
+        private int bufferSize = 64 * 1024;
+        private Ticker ticker = Ticker.systemTicker();
+
+        private Builder(Path directory, String baseName) {
+            this.directory = checkNotNull(directory, "directory is required");
+            this.baseName = checkNotNull(baseName, "baseName is required");
+            checkArgument(!baseName.isEmpty(), "baseName is required to be non-empty");
+        }
+
+        /**
+         * @param extension extension for segment files, including the leading '.'
+         */
+        public Builder extension(String extension) {
+            this.extension = checkNotNull(extension, "extension is required");
+            return this;
+        }
+
+        public Builder maxSegmentBytes(long maxSegmentBytes) {
+            checkArgument(maxSegmentBytes > 0, "maxSegmentBytes > 0 : %s", maxSegmentBytes);
+            this.maxSegmentBytes = maxSegmentBytes;
+            return this;
+        }
+
+        public Builder maxSegmentAge(Duration maxSegmentAge) {
+            checkNotNull(maxSegmentAge, "maxSegmentAge is required");
+            checkArgument(!maxSegmentAge.isNegative() && !maxSegmentAge.isZero(), "maxSegmentAge > 0 : %s", maxSegmentAge);
+            this.maxSegmentAge = maxSegmentAge;
+            return this;
+        }
+
+        /**
+         * Compress closed segments with the provided codec; segments are left uncompressed if not set
+         */
+        public Builder compression(CompressionCodec codec) {
+            this.codec = checkNotNull(codec, "codec is required");
+            return this;
+        }
+
+        /**
+         * @param compressionThreads number of threads compressing closed segments
+         * @param maxQueuedSegments  number of closed segments that may wait for a compression thread before the writer
+         *                           waits for room
+         */
+        public Builder compressionPool(int compressionThreads, int maxQueuedSegments) {
+            checkArgument(compressionThreads > 0, "compressionThreads > 0 : %s", compressionThreads);
+            checkArgument(maxQueuedSegments > 0, "maxQueuedSegments > 0 : %s", maxQueuedSegments);
+            this.compressionThreads = compressionThreads;
+            this.maxQueuedSegments = maxQueuedSegments;
+            return this;
+        }
+
+        public Builder bufferSize(int bufferSize) {
+            checkArgument(bufferSize > 0, "bufferSize > 0 : %s", bufferSize);
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        Builder ticker(Ticker ticker) {
+            this.ticker = checkNotNull(ticker, "ticker is required");
+            return this;
+        }
+
+        public RollingFileSink build() throws IOException {
+            checkState(maxSegmentBytes != Long.MAX_VALUE || maxSegmentAge != null, "maxSegmentBytes and/or maxSegmentAge is required");
+            Files.createDirectories(directory);
+            return new RollingFileSink(this);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.digitalascent.common.io;
+
+import java.util.zip.Checksum;
+
+/**
+ * Streaming xxHash32, as required by the LZ4 frame format for header and content checksums.
+ */
+final class XxHash32 implements Checksum {
+    private static final int PRIME1 = 0x9E3779B1;
+    private static final int PRIME2 = 0x85EBCA77;
+    private static final int PRIME3 = 0xC2B2AE3D;
+    private static final int PRIME4 = 0x27D4EB2F;
+    private static final int PRIME5 = 0x165667B1;
+
+    private final int seed;
+    private final byte[] pending = new byte[16];
+    private int pendingLength;
+    private long totalLength;
+    private int v1;
+    private int v2;
+    private int v3;
+    private int v4;
+
+    XxHash32(int seed) {
+        this.seed = seed;
+        reset();
+    }
+
+    static int hash(byte[] buffer, int offset, int length, int seed) {
+        XxHash32 xxHash32 = new XxHash32(seed);
+        xxHash32.update(buffer, offset, length);
+        return (int) xxHash32.getValue();
+    }
+
+    @Override
+    public void update(int b) {
+        update(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void update(byte[] buffer, int offset, int length) {
+        totalLength += length;
+        int end = offset + length;
+
+        if (pendingLength > 0) {
+            int toCopy = Math.min(16 - pendingLength, length);
+            System.arraycopy(buffer, offset, pending, pendingLength, toCopy);
+            pendingLength += toCopy;
+            offset += toCopy;
+            if (pendingLength < 16) {
+                return;
+            }
+            processStripe(pending, 0);
+            pendingLength = 0;
+        }
+
+        while (offset <= end - 16) {
+            processStripe(buffer, offset);
+            offset += 16;
+        }
+
+        pendingLength = end - offset;
+        System.arraycopy(buffer, offset, pending, 0, pendingLength);
+    }
+
+    @Override
+    public long getValue() {
+        int hash;
+        if (totalLength >= 16) {
+            hash = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7) + Integer.rotateLeft(v3, 12) + Integer.rotateLeft(v4, 18);
+        } else {
+            hash = seed + PRIME5;
+        }
+        hash += (int) totalLength;
+
+        int offset = 0;
+        while (offset <= pendingLength - 4) {
+            hash += Lz4Block.readInt(pending, offset) * PRIME3;
+            hash = Integer.rotateLeft(hash, 17) * PRIME4;
+            offset += 4;
+        }
+        while (offset < pendingLength) {
+            hash += (pending[offset] & 0xFF) * PRIME5;
+            hash = Integer.rotateLeft(hash, 11) * PRIME1;
+            offset++;
+        }
+
+        hash ^= hash >>> 15;
+        hash *= PRIME2;
+        hash ^= hash >>> 13;
+        hash *= PRIME3;
+        hash ^= hash >>> 16;
+        return hash & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+        v1 = seed + PRIME1 + PRIME2;
+        v2 = seed + PRIME2;
+        v3 = seed;
+        v4 = seed - PRIME1;
+        pendingLength = 0;
+        totalLength = 0;
+    }
+
+    private void processStripe(byte[] buffer, int offset) {
+        v1 = round(v1, Lz4Block.readInt(buffer, offset));
+        v2 = round(v2, Lz4Block.readInt(buffer, offset + 4));
+        v3 = round(v3, Lz4Block.readInt(buffer, offset + 8));
+        v4 = round(v4, Lz4Block.readInt(buffer, offset + 12));
+    }
+
+    private static int round(int accumulator, int input) {
+        accumulator += input * PRIME2;
+        accumulator = Integer.rotateLeft(accumulator, 13);
+        return accumulator * PRIME1;
+    }
+}
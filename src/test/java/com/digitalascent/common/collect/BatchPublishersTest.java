@@ -0,0 +1,144 @@
+package com.digitalascent.common.collect;
+
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchPublishersTest {
+
+    private static final List<List<Integer>> PAGES = Lists.partition(IntStream.rangeClosed(1, 20).boxed().collect(Collectors.toList()), 5);
+
+    @Test
+    void fetchesOnlyAsDemandRequires() {
+        AtomicInteger fetches = new AtomicInteger();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        BatchPublishers.publisher((AsyncBatchSupplier<Integer>) nextToken -> {
+            fetches.incrementAndGet();
+            return CompletableFuture.completedFuture(page(nextToken));
+        }).subscribe(subscriber);
+
+        assertThat(fetches.get()).isZero();
+
+        subscriber.subscription.request(3);
+        assertThat(subscriber.elements).containsExactly(1, 2, 3);
+        assertThat(fetches.get()).isEqualTo(1);
+
+        subscriber.subscription.request(3);
+        assertThat(subscriber.elements).containsExactly(1, 2, 3, 4, 5, 6);
+        assertThat(fetches.get()).isEqualTo(2);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertThat(subscriber.elements).isEqualTo(IntStream.rangeClosed(1, 20).boxed().collect(Collectors.toList()));
+        assertThat(subscriber.completed.getCount()).isZero();
+        assertThat(fetches.get()).isEqualTo(4);
+    }
+
+    @Test
+    void publishesBlockingSupplierOnExecutor() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            RecordingSubscriber subscriber = new RecordingSubscriber();
+            Publisher<Integer> publisher = BatchPublishers.publisher(BatchPublishersTest::page, executor);
+            publisher.subscribe(subscriber);
+            subscriber.subscription.request(Long.MAX_VALUE);
+
+            assertThat(subscriber.completed.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(subscriber.elements).isEqualTo(IntStream.rangeClosed(1, 20).boxed().collect(Collectors.toList()));
+            assertThat(subscriber.error).isNull();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void cancellationStopsFetching() {
+        AtomicInteger fetches = new AtomicInteger();
+        CompletableFuture<Batch<Integer>> pendingFetch = new CompletableFuture<>();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        BatchPublishers.publisher((AsyncBatchSupplier<Integer>) nextToken -> {
+            fetches.incrementAndGet();
+            return nextToken == null ? CompletableFuture.completedFuture(page(null)) : pendingFetch;
+        }).subscribe(subscriber);
+
+        subscriber.subscription.request(6);
+        assertThat(fetches.get()).isEqualTo(2);
+
+        subscriber.subscription.cancel();
+        assertThat(pendingFetch.isCancelled()).isTrue();
+        subscriber.subscription.request(10);
+        assertThat(subscriber.elements).containsExactly(1, 2, 3, 4, 5);
+        assertThat(fetches.get()).isEqualTo(2);
+        assertThat(subscriber.error).isNull();
+    }
+
+    @Test
+    void propagatesFetchFailure() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        BatchPublishers.publisher((AsyncBatchSupplier<Integer>) nextToken -> {
+            CompletableFuture<Batch<Integer>> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("throttled"));
+            return future;
+        }).subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        assertThat(subscriber.error).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void rejectsNonPositiveRequest() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        BatchPublishers.publisher((AsyncBatchSupplier<Integer>) nextToken -> CompletableFuture.completedFuture(page(nextToken)))
+                .subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+        assertThat(subscriber.error).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Batch<Integer> page(String nextToken) {
+        int page = nextToken == null ? 0 : Integer.parseInt(nextToken);
+        return new Batch<>(page == PAGES.size() - 1 ? null : String.valueOf(page + 1), PAGES.get(page));
+    }
+
+    private static final class RecordingSubscriber implements Subscriber<Integer> {
+        private final List<Integer> elements = new CopyOnWriteArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile Subscription subscription;
+        private volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Integer element) {
+            elements.add(element);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
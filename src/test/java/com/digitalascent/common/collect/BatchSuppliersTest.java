@@ -0,0 +1,161 @@
+package com.digitalascent.common.collect;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchSuppliersTest {
+
+    private static final BatchFetchPolicy FAST_RETRIES = BatchFetchPolicy.defaults()
+            .withBackoff(Duration.ofMillis(1), Duration.ofMillis(5));
+
+    @Test
+    void retriesFailedFetchOfSamePage() {
+        AtomicInteger calls = new AtomicInteger();
+        BatchFetchStatistics statistics = new BatchFetchStatistics();
+        BatchSupplier<Integer> flaky = nextToken -> {
+            // every other call is throttled
+            if (calls.incrementAndGet() % 2 == 1) {
+                throw new IllegalStateException("throttled");
+            }
+            int page = nextToken == null ? 0 : Integer.parseInt(nextToken);
+            return new Batch<>(page == 2 ? null : String.valueOf(page + 1), ImmutableList.of(page));
+        };
+
+        List<Integer> result = ExtraStreams.batchLoadingStream(BatchSuppliers.withFetchPolicy(flaky, FAST_RETRIES, statistics))
+                .collect(Collectors.toList());
+
+        assertThat(result).containsExactly(0, 1, 2);
+        assertThat(statistics.fetches()).isEqualTo(6);
+        assertThat(statistics.retries()).isEqualTo(3);
+        assertThat(statistics.failedFetches()).isZero();
+    }
+
+    @Test
+    void failsOnceAttemptsAreExhausted() {
+        BatchFetchStatistics statistics = new BatchFetchStatistics();
+        BatchSupplier<Integer> failing = BatchSuppliers.withFetchPolicy(nextToken -> {
+            throw new IllegalStateException("throttled");
+        }, FAST_RETRIES.withMaxAttempts(3), statistics);
+
+        assertThatThrownBy(() -> failing.nextBatch(null)).isInstanceOf(IllegalStateException.class).hasMessageContaining("throttled");
+        assertThat(statistics.fetches()).isEqualTo(3);
+        assertThat(statistics.retries()).isEqualTo(2);
+        assertThat(statistics.failedFetches()).isEqualTo(1);
+    }
+
+    @Test
+    void doesNotRetryNonRetryableExceptions() {
+        BatchFetchStatistics statistics = new BatchFetchStatistics();
+        BatchSupplier<Integer> failing = BatchSuppliers.withFetchPolicy(nextToken -> {
+            throw new IllegalArgumentException("bad request");
+        }, FAST_RETRIES.retryingOn(e -> e instanceof IllegalStateException), statistics);
+
+        assertThatThrownBy(() -> failing.nextBatch(null)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(statistics.fetches()).isEqualTo(1);
+        assertThat(statistics.retries()).isZero();
+    }
+
+    @Test
+    void rateLimitsFetches() {
+        BatchFetchStatistics statistics = new BatchFetchStatistics();
+        BatchSupplier<Integer> limited = BatchSuppliers.withFetchPolicy(nextToken -> Batch.emptyBatch(),
+                BatchFetchPolicy.defaults().withRateLimit(20), statistics);
+
+        for (int i = 0; i < 4; i++) {
+            limited.nextBatch(null);
+        }
+
+        assertThat(statistics.throttleWait(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(100);
+    }
+
+    @Test
+    void backoffIsBoundedByExponentialCeiling() {
+        BatchFetchPolicy policy = BatchFetchPolicy.defaults().withBackoff(Duration.ofNanos(100), Duration.ofNanos(1000));
+        for (int i = 0; i < 100; i++) {
+            assertThat(policy.backoffNanos(0)).isBetween(0L, 100L);
+            assertThat(policy.backoffNanos(2)).isBetween(0L, 400L);
+            assertThat(policy.backoffNanos(10)).isBetween(0L, 1000L);
+        }
+    }
+    @Test
+    void cachingSharesPagesBetweenStreams() {
+        List<List<Integer>> pages = Lists.partition(IntStream.rangeClosed(1, 20).boxed().collect(Collectors.toList()), 5);
+        AtomicInteger fetches = new AtomicInteger();
+        CachingBatchSupplier<Integer> caching = BatchSuppliers.caching(nextToken -> {
+            fetches.incrementAndGet();
+            int page = nextToken == null ? 0 : Integer.parseInt(nextToken);
+            return new Batch<>(page == pages.size() - 1 ? null : String.valueOf(page + 1), pages.get(page));
+        }, 100, Duration.ofMinutes(5));
+
+        List<Integer> first = ExtraStreams.batchLoadingStream(caching).collect(Collectors.toList());
+        List<Integer> second = ExtraStreams.batchLoadingStream(caching).collect(Collectors.toList());
+
+        assertThat(second).isEqualTo(first);
+        assertThat(fetches.get()).isEqualTo(4);
+        assertThat(caching.fetchesSaved()).isEqualTo(4);
+        assertThat(caching.stats().hitRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    void cachingCoalescesConcurrentFetchesOfSameToken() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFetch = new CountDownLatch(1);
+        CachingBatchSupplier<Integer> caching = BatchSuppliers.caching(nextToken -> {
+            fetches.incrementAndGet();
+            fetchStarted.countDown();
+            Uninterruptibles.awaitUninterruptibly(releaseFetch);
+            return new Batch<>(null, ImmutableList.of(1, 2, 3));
+        }, 10, Duration.ofMinutes(5));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Batch<Integer>>> results = new ArrayList<>();
+            results.add(executor.submit(() -> caching.nextBatch(null)));
+            assertThat(fetchStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> caching.nextBatch(null)));
+            }
+            releaseFetch.countDown();
+
+            for (Future<Batch<Integer>> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS).getIterable()).containsExactly(1, 2, 3);
+            }
+            assertThat(fetches.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void cachingDoesNotCacheFailures() {
+        AtomicInteger fetches = new AtomicInteger();
+        CachingBatchSupplier<Integer> caching = BatchSuppliers.caching(nextToken -> {
+            if (fetches.incrementAndGet() == 1) {
+                throw new IllegalStateException("throttled");
+            }
+            return new Batch<>(null, ImmutableList.of(1));
+        }, 10, Duration.ofMinutes(5));
+
+        assertThatThrownBy(() -> caching.nextBatch(null)).isInstanceOf(IllegalStateException.class);
+        assertThat(caching.nextBatch(null).getIterable()).containsExactly(1);
+        assertThat(fetches.get()).isEqualTo(2);
+    }
+}
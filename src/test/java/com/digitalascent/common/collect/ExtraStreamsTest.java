@@ -1,16 +1,48 @@
 package com.digitalascent.common.collect;
 
 
+import com.digitalascent.common.concurrent.ExtraThreads;
+import com.digitalascent.common.io.CompressionCodecs;
 import com.google.common.collect.ContiguousSet;
 import com.google.common.collect.DiscreteDomain;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Range;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.junit.jupiter.api.Test;
 
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -23,6 +55,187 @@ class ExtraStreamsTest {
         assertThat(ExtraStreams.streamFor(null)).isEmpty();
     }
 
+    @Test
+    void chunkedGroupsConsecutiveElements() {
+        assertThat(ExtraStreams.chunked(IntStream.rangeClosed(1, 7).boxed(), 3).collect(Collectors.toList()))
+                .containsExactly(ImmutableList.of(1, 2, 3), ImmutableList.of(4, 5, 6), ImmutableList.of(7));
+        assertThat(ExtraStreams.chunked(Stream.empty(), 3).count()).isZero();
+    }
+
+    @Test
+    void chunkedByWeightClosesChunkBeforeExceedingMaximum() {
+        Stream<String> words = Stream.of("aaaa", "bb", "ccc", "dddddddd", "e", "f");
+
+        assertThat(ExtraStreams.chunked(words, 6, String::length).collect(Collectors.toList())).containsExactly(
+                ImmutableList.of("aaaa", "bb"), ImmutableList.of("ccc"), ImmutableList.of("dddddddd"), ImmutableList.of("e", "f"));
+    }
+
+    @Test
+    void chunkedRejectsNegativeWeights() {
+        assertThatThrownBy(() -> ExtraStreams.chunked(Stream.of("a", "b"), 6, element -> -1).collect(Collectors.toList()))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("element weight must be >= 0");
+    }
+
+    @Test
+    void mapAsyncPreservesOrderWithBoundedConcurrency() {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            AtomicInteger inFlight = new AtomicInteger();
+            AtomicInteger maxInFlight = new AtomicInteger();
+            List<Integer> result = ExtraStreams.mapAsync(IntStream.range(0, 200).boxed(), i -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(i % 3);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                return i * 2;
+            }, 4, executor).collect(Collectors.toList());
+
+            assertThat(result).isEqualTo(IntStream.range(0, 200).map(i -> i * 2).boxed().collect(Collectors.toList()));
+            assertThat(maxInFlight.get()).isBetween(1, 4);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void mapAsyncPropagatesFailureWithoutWaitingForEarlierElements() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        try {
+            assertThatThrownBy(() -> ExtraStreams.mapAsync(IntStream.range(0, 10).boxed(), i -> {
+                if (i == 0) {
+                    Uninterruptibles.awaitUninterruptibly(releaseFirst, 1, TimeUnit.MINUTES);
+                }
+                if (i == 2) {
+                    throw new IllegalStateException("bulk call failed");
+                }
+                return i;
+            }, 4, executor).collect(Collectors.toList())).isInstanceOf(IllegalStateException.class).hasMessageContaining("bulk call failed");
+            assertThat(releaseFirst.getCount()).isEqualTo(1);
+        } finally {
+            releaseFirst.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void mapAsyncCancelsHeadOfWindowOnFailure() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch headInterrupted = new CountDownLatch(1);
+        try {
+            assertThatThrownBy(() -> ExtraStreams.mapAsync(IntStream.range(0, 10).boxed(), i -> {
+                if (i == 0) {
+                    try {
+                        Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                    } catch (InterruptedException e) {
+                        headInterrupted.countDown();
+                    }
+                }
+                if (i == 2) {
+                    throw new IllegalStateException("bulk call failed");
+                }
+                return i;
+            }, 4, executor).collect(Collectors.toList())).isInstanceOf(IllegalStateException.class);
+            assertThat(headInterrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void mapAsyncDoesNotWaitForRejectedApplications() {
+        AtomicInteger submitted = new AtomicInteger();
+        Executor rejectingSecond = task -> {
+            if (submitted.incrementAndGet() == 2) {
+                throw new RejectedExecutionException("full");
+            }
+            task.run();
+        };
+        Iterator<Integer> iterator = ExtraStreams.mapAsync(IntStream.range(0, 4).boxed(), i -> i, 1, rejectingSecond).iterator();
+
+        assertThat(iterator.next()).isEqualTo(0);
+        assertThatThrownBy(iterator::next).isInstanceOf(RejectedExecutionException.class);
+        // the rejected element is skipped, rather than left in the window to be waited on forever
+        assertThat(iterator.next()).isEqualTo(2);
+    }
+
+    @Test
+    void distinctByKeepsFirstElementForEachKey() {
+        DistinctStatistics statistics = new DistinctStatistics();
+        List<String> result = ExtraStreams.distinctBy(Stream.of("a1", "b1", "a2", "c1", "b2"), element -> element.charAt(0),
+                DistinctStrategy.exact(), statistics)
+                .collect(Collectors.toList());
+
+        assertThat(result).containsExactly("a1", "b1", "c1");
+        assertThat(statistics.elements()).isEqualTo(5);
+        assertThat(statistics.distinctElements()).isEqualTo(3);
+        assertThat(statistics.memoryBytes()).isPositive();
+    }
+
+    @Test
+    void distinctByExactOffHeapGrowsBeyondExpectedKeys() {
+        DistinctStatistics statistics = new DistinctStatistics();
+        long count = ExtraStreams.distinctBy(LongStream.range(0, 200_000).map(i -> i % 100_000).boxed(), Long::longValue,
+                DistinctStrategy.exact(16).withOffHeapStorage(), statistics)
+                .count();
+
+        assertThat(count).isEqualTo(100_000);
+        assertThat(statistics.memoryBytes()).isEqualTo(262_144 * Long.BYTES);
+    }
+
+    @Test
+    void distinctByApproximateNeverPassesDuplicates() {
+        DistinctStatistics statistics = new DistinctStatistics();
+        long count = ExtraStreams.distinctBy(LongStream.range(0, 200_000).map(i -> i % 100_000).boxed(), Long::longValue,
+                DistinctStrategy.approximateWithin(256 * 1024, 0.01), statistics)
+                .count();
+
+        assertThat(count).isBetween(98_000L, 100_000L);
+        assertThat(statistics.memoryBytes()).isBetween(250 * 1024L, 260 * 1024L);
+    }
+
+    @Test
+    void mergeSortedMergesSortedStreams() {
+        List<Integer> first = IntStream.range(0, 1000).map(i -> i * 3).boxed().collect(Collectors.toList());
+        List<Integer> second = IntStream.range(0, 700).map(i -> i * 2).boxed().collect(Collectors.toList());
+        List<Integer> third = ImmutableList.of(-5, 7, 7, 5000);
+
+        List<Integer> expected = new ArrayList<>();
+        expected.addAll(first);
+        expected.addAll(second);
+        expected.addAll(third);
+        expected.sort(null);
+
+        try (Stream<Integer> merged = ExtraStreams.mergeSorted(Comparator.naturalOrder(),
+                ImmutableList.of(first.stream(), Stream.empty(), second.stream(), third.stream()))) {
+            assertThat(merged.collect(Collectors.toList())).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void mergeSortedKeepsSourceOrderOfEqualElements() {
+        Comparator<String> byLength = Comparator.comparingInt(String::length);
+        try (Stream<String> merged = ExtraStreams.mergeSorted(byLength,
+                ImmutableList.of(Stream.of("b", "bb", "bbb"), Stream.of("a", "aa", "aaa")))) {
+            assertThat(merged.collect(Collectors.toList())).containsExactly("b", "a", "bb", "aa", "bbb", "aaa");
+        }
+    }
+
+    @Test
+    void closingMergedStreamClosesSources() {
+        AtomicInteger closed = new AtomicInteger();
+        Stream<Integer> infinite = Stream.iterate(0, i -> i + 1).onClose(closed::incrementAndGet);
+        Stream<Integer> evens = Stream.iterate(0, i -> i + 2).onClose(closed::incrementAndGet);
+        try (Stream<Integer> merged = ExtraStreams.mergeSorted(Comparator.naturalOrder(), ImmutableList.of(infinite, evens))) {
+            assertThat(merged.limit(5).collect(Collectors.toList())).containsExactly(0, 0, 1, 2, 2);
+        }
+        assertThat(closed.get()).isEqualTo(2);
+    }
+
     @Test
     void batchIterationMultipleBatches() {
         List<Integer> list = ImmutableList.copyOf(ContiguousSet.create(
@@ -52,6 +265,42 @@ class ExtraStreamsTest {
         assertThat(finalList).isEqualTo(list);
     }
 
+    @Test
+    void batchIterationShortCircuitsWithinBatch() {
+        List<List<Integer>> lists = Lists.partition(IntStream.rangeClosed(1, 60).boxed().collect(Collectors.toList()), 6);
+        AtomicInteger fetches = new AtomicInteger();
+        AtomicInteger elementsPulled = new AtomicInteger();
+        Stream<Integer> stream = ExtraStreams.batchLoadingStream(nextToken -> {
+            int idx = fetches.getAndIncrement();
+            return new Batch<>(idx == lists.size() - 1 ? null : String.valueOf(idx),
+                    Iterables.transform(lists.get(idx), element -> {
+                        elementsPulled.incrementAndGet();
+                        return element;
+                    }));
+        });
+
+        assertThat(stream.limit(8).collect(Collectors.toList())).containsExactly(1, 2, 3, 4, 5, 6, 7, 8);
+        assertThat(fetches.get()).isEqualTo(2);
+        assertThat(elementsPulled.get()).isEqualTo(8);
+    }
+
+    @Test
+    void asyncBatchIterationPullsElementsLazily() {
+        List<Integer> list = IntStream.rangeClosed(1, 100).boxed().collect(Collectors.toList());
+        AtomicInteger elementsPulled = new AtomicInteger();
+        try (Stream<Integer> stream = ExtraStreams.queuedBatchLoadingStream(
+                nextToken -> new Batch<>(null, Iterables.transform(list, element -> {
+                    elementsPulled.incrementAndGet();
+                    return element;
+                })), 1)) {
+            Iterator<Integer> iterator = stream.iterator();
+            assertThat(iterator.next()).isEqualTo(1);
+            assertThat(iterator.next()).isEqualTo(2);
+        }
+
+        assertThat(elementsPulled.get()).isEqualTo(2);
+    }
+
     @SuppressWarnings("ResultOfMethodCallIgnored")
     @Test
     void batchIterationFailsOnRepeatedToken() {
@@ -64,6 +313,31 @@ class ExtraStreamsTest {
         }).isInstanceOf(IllegalStateException.class).hasMessageContaining("abc");
     }
 
+    @Test
+    void primitiveBatchIterationUsesArrayRanges() {
+        long[] ids = LongStream.rangeClosed(1, 1000).toArray();
+        LongStream longs = ExtraStreams.batchLoadingLongStream(nextToken -> {
+            int page = nextToken == null ? 0 : Integer.parseInt(nextToken);
+            // pages of 100 values, served from a shared array
+            return new LongBatch(page == 9 ? null : String.valueOf(page + 1), ids, page * 100, 100);
+        });
+        assertThat(longs.toArray()).isEqualTo(ids);
+
+        int[] calls = {0};
+        IntStream ints = ExtraStreams.batchLoadingIntStream(nextToken -> calls[0]++ == 0 ? new IntBatch("next", new int[]{1, 2}) : new IntBatch(null, new int[]{3}));
+        assertThat(ints.limit(2).sum()).isEqualTo(3);
+        assertThat(calls[0]).isEqualTo(1);
+
+        assertThat(ExtraStreams.batchLoadingDoubleStream(nextToken -> new DoubleBatch(null, new double[]{0.5, 1.5, 2.0}, 1, 2)).sum()).isEqualTo(3.5);
+        assertThat(ExtraStreams.batchLoadingLongStream(nextToken -> LongBatch.emptyBatch()).count()).isZero();
+    }
+
+    @Test
+    void primitiveBatchIterationFailsOnRepeatedToken() {
+        assertThatThrownBy(() -> ExtraStreams.batchLoadingLongStream(nextToken -> new LongBatch("abc", new long[]{1})).sum())
+                .isInstanceOf(IllegalStateException.class).hasMessageContaining("abc");
+    }
+
     @Test
     void asyncBatchIterationOnMultipleBatches() {
         List<Integer> list = ImmutableList.copyOf(ContiguousSet.create(
@@ -79,6 +353,56 @@ class ExtraStreamsTest {
         assertThat(finalList).isEqualTo(list);
     }
 
+    @Test
+    void batchIterationReportsFetchMetrics() {
+        List<List<Integer>> lists = Lists.partition(IntStream.rangeClosed(1, 100).boxed().collect(Collectors.toList()), 30);
+        final int[] idx = {0};
+        BatchStreamStatistics statistics = new BatchStreamStatistics();
+        long count = ExtraStreams.batchLoadingStream(
+                nextToken -> new Batch<>(idx[0] == lists.size() - 1 ? null : String.valueOf(idx[0]), lists.get(idx[0]++)),
+                statistics).count();
+
+        assertThat(count).isEqualTo(100);
+        assertThat(statistics.batches()).isEqualTo(4);
+        assertThat(statistics.elements()).isEqualTo(100);
+        assertThat(statistics.consumerBlockedTime(TimeUnit.NANOSECONDS)).isEqualTo(statistics.fetchTime(TimeUnit.NANOSECONDS));
+        assertThat(statistics.maximumQueueDepth()).isZero();
+    }
+
+    @Test
+    void batchIterationMetricsDoNotConsumeSingleUseBatches() {
+        BatchStreamStatistics statistics = new BatchStreamStatistics();
+        List<Integer> result = ExtraStreams.batchLoadingStream(
+                nextToken -> new Batch<>(null, Stream.of(1, 2, 3)::iterator), statistics).collect(Collectors.toList());
+
+        assertThat(result).containsExactly(1, 2, 3);
+        assertThat(statistics.batches()).isEqualTo(1);
+        assertThat(statistics.elements()).isZero();
+    }
+
+    @Test
+    void asyncBatchIterationReportsProducerBlockedBySlowConsumer() {
+        List<List<Integer>> lists = Lists.partition(IntStream.rangeClosed(1, 100).boxed().collect(Collectors.toList()), 10);
+        final int[] idx = {0};
+        BatchStreamStatistics statistics = new BatchStreamStatistics();
+        ExecutorService executorService = Executors.newSingleThreadExecutor(ExtraThreads.defaultThreadFactory("test"));
+        List<Integer> result;
+        try (Stream<Integer> stream = ExtraStreams.queuedBatchLoadingStream(
+                nextToken -> new Batch<>(idx[0] == lists.size() - 1 ? null : String.valueOf(idx[0]), lists.get(idx[0]++)),
+                PrefetchPolicy.fixed(2), statistics, executorService)) {
+            result = stream.peek(element -> Uninterruptibles.sleepUninterruptibly(1, TimeUnit.MILLISECONDS))
+                    .collect(Collectors.toList());
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        assertThat(result).hasSize(100);
+        assertThat(statistics.batches()).isEqualTo(10);
+        assertThat(statistics.elements()).isEqualTo(100);
+        assertThat(statistics.maximumQueueDepth()).isEqualTo(2);
+        assertThat(statistics.producerBlockedTime(TimeUnit.MILLISECONDS)).isGreaterThan(statistics.consumerBlockedTime(TimeUnit.MILLISECONDS));
+    }
+
     @Test
     void asyncBatchIterationSingleBatch() {
         List<Integer> list = ImmutableList.copyOf(ContiguousSet.create(
@@ -104,4 +428,437 @@ class ExtraStreamsTest {
             stream.collect(Collectors.toList());
         }).isInstanceOf(IllegalStateException.class).hasMessageContaining("abc");
     }
+
+    @Test
+    void asyncBatchIterationOnSuppliedExecutor() {
+        List<Integer> list = ImmutableList.copyOf(ContiguousSet.create(
+                Range.closed(1, 500), DiscreteDomain.integers()));
+        List<List<Integer>> lists = Lists.partition(list, 6);
+        Set<String> producerThreads = ConcurrentHashMap.newKeySet();
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor(ExtraThreads.defaultThreadFactory("test"));
+        try {
+            for (int i = 0; i < 3; i++) {
+                final int[] idx = {0};
+                Stream<Integer> stream = ExtraStreams.queuedBatchLoadingStream(nextToken -> {
+                    producerThreads.add(Thread.currentThread().getName());
+                    return new Batch<>(idx[0] == lists.size() - 1 ? null : String.valueOf(idx[0]), lists.get(idx[0]++));
+                }, 5, executorService);
+
+                assertThat(stream.collect(Collectors.toList())).isEqualTo(list);
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertThat(producerThreads).hasSize(1);
+    }
+
+    @Test
+    void asyncBatchIterationWithAdaptivePrefetch() {
+        List<Integer> list = IntStream.rangeClosed(1, 500).boxed().collect(Collectors.toList());
+        List<List<Integer>> lists = Lists.partition(list, 6);
+        final int[] idx = {0};
+        Stream<Integer> stream = ExtraStreams.queuedBatchLoadingStream(
+                nextToken -> new Batch<>(idx[0] == lists.size() - 1 ? null : String.valueOf(idx[0]), lists.get(idx[0]++)),
+                PrefetchPolicy.adaptive(1, 8).withMaximumQueuedElements(24)
+        );
+
+        assertThat(stream.collect(Collectors.toList())).isEqualTo(list);
+    }
+
+    @Test
+    void segmentedBatchIterationInSegmentOrder() {
+        List<List<Integer>> segments = Lists.partition(IntStream.rangeClosed(1, 500).boxed().collect(Collectors.toList()), 50);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        List<BatchSupplier<Integer>> suppliers = segments.stream()
+                .map(segment -> pagedSupplier(Lists.partition(segment, 7), inFlight, maxInFlight))
+                .collect(Collectors.toList());
+
+        try (Stream<Integer> stream = ExtraStreams.segmentedBatchLoadingStream(suppliers, 3, SegmentOrder.SEGMENT_ORDER)) {
+            assertThat(stream.collect(Collectors.toList())).isEqualTo(IntStream.rangeClosed(1, 500).boxed().collect(Collectors.toList()));
+        }
+        assertThat(maxInFlight.get()).isBetween(1, 3);
+    }
+
+    @Test
+    void segmentedBatchIterationUnordered() {
+        List<List<Integer>> segments = Lists.partition(IntStream.rangeClosed(1, 500).boxed().collect(Collectors.toList()), 50);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        List<BatchSupplier<Integer>> suppliers = segments.stream()
+                .map(segment -> pagedSupplier(Lists.partition(segment, 7), inFlight, maxInFlight))
+                .collect(Collectors.toList());
+
+        try (Stream<Integer> stream = ExtraStreams.segmentedBatchLoadingStream(suppliers, 4, SegmentOrder.UNORDERED)) {
+            assertThat(stream.sorted().collect(Collectors.toList())).isEqualTo(IntStream.rangeClosed(1, 500).boxed().collect(Collectors.toList()));
+        }
+        assertThat(maxInFlight.get()).isBetween(1, 4);
+    }
+
+    @Test
+    void segmentedBatchIterationPropagatesSegmentFailure() {
+        List<BatchSupplier<Integer>> suppliers = ImmutableList.of(
+                nextToken -> new Batch<>(null, ImmutableList.of(1, 2)),
+                nextToken -> {
+                    throw new IllegalStateException("segment failed");
+                },
+                nextToken -> new Batch<>(null, ImmutableList.of(5, 6)));
+
+        assertThatThrownBy(() -> {
+            try (Stream<Integer> stream = ExtraStreams.segmentedBatchLoadingStream(suppliers, 2, SegmentOrder.SEGMENT_ORDER)) {
+                stream.collect(Collectors.toList());
+            }
+        }).isInstanceOf(IllegalStateException.class).hasMessageContaining("segment failed");
+    }
+
+    private static BatchSupplier<Integer> pagedSupplier(List<List<Integer>> pages, AtomicInteger inFlight, AtomicInteger maxInFlight) {
+        return nextToken -> {
+            int concurrent = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(concurrent, Math::max);
+            try {
+                Thread.sleep(1);
+                int page = nextToken == null ? 0 : Integer.parseInt(nextToken);
+                return new Batch<>(page == pages.size() - 1 ? null : String.valueOf(page + 1), pages.get(page));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        };
+    }
+
+    @Test
+    void parallelBatchIterationSpreadsBatchesAcrossWorkers() {
+        List<Integer> list = IntStream.rangeClosed(1, 2000).boxed().collect(Collectors.toList());
+        List<List<Integer>> lists = Lists.partition(list, 100);
+        final int[] idx = {0};
+        Set<Thread> workers = ConcurrentHashMap.newKeySet();
+
+        try (Stream<Integer> stream = ExtraStreams.parallelBatchLoadingStream(
+                nextToken -> new Batch<>(idx[0] == lists.size() - 1 ? null : String.valueOf(idx[0]), lists.get(idx[0]++)),
+                PrefetchPolicy.fixed(4))) {
+            assertThat(stream.isParallel()).isTrue();
+            List<Integer> result = stream.map(element -> {
+                workers.add(Thread.currentThread());
+                busyWork();
+                return element;
+            }).collect(Collectors.toList());
+
+            assertThat(result).isEqualTo(list);
+        }
+        if (ForkJoinPool.getCommonPoolParallelism() > 1) {
+            assertThat(workers.size()).isGreaterThan(1);
+        }
+    }
+
+    @Test
+    void parallelBatchIterationSplitsWithinSingleBatch() {
+        List<Integer> list = IntStream.rangeClosed(1, 2000).boxed().collect(Collectors.toList());
+
+        try (Stream<Integer> stream = ExtraStreams.parallelBatchLoadingStream(nextToken -> new Batch<>(null, list), PrefetchPolicy.fixed(1))) {
+            assertThat(stream.mapToLong(Integer::longValue).sum()).isEqualTo(2001L * 1000);
+        }
+    }
+
+    private static void busyWork() {
+        long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(50);
+        while (System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+    }
+
+    @Test
+    void queuedBatchIterationSpillsToDiskWithoutBlockingProducer() throws IOException, InterruptedException {
+        List<Integer> list = IntStream.rangeClosed(1, 5000).boxed().collect(Collectors.toList());
+        List<List<Integer>> lists = Lists.partition(list, 50);
+        final int[] idx = {0};
+        CountDownLatch lastBatchFetched = new CountDownLatch(1);
+        Path spillDirectory = Files.createTempDirectory("ExtraStreamsTest");
+        try {
+            SpillPolicy<Integer> spillPolicy = SpillPolicy.spillingTo(new ElementSerializer<Integer>() {
+                @Override
+                public void write(Integer element, DataOutput output) throws IOException {
+                    output.writeInt(element);
+                }
+
+                @Override
+                public Integer read(DataInput input) throws IOException {
+                    return input.readInt();
+                }
+            }).withCompression(CompressionCodecs.lz4()).withDirectory(spillDirectory);
+
+            try (Stream<Integer> stream = ExtraStreams.queuedBatchLoadingStream(nextToken -> {
+                if (idx[0] == lists.size() - 1) {
+                    lastBatchFetched.countDown();
+                }
+                return new Batch<>(idx[0] == lists.size() - 1 ? null : String.valueOf(idx[0]), lists.get(idx[0]++));
+            }, PrefetchPolicy.fixed(2), spillPolicy)) {
+                Iterator<Integer> iterator = stream.iterator();
+                assertThat(iterator.next()).isEqualTo(1);
+
+                // the producer runs to completion although the consumer has only taken one batch
+                assertThat(lastBatchFetched.await(5, TimeUnit.SECONDS)).isTrue();
+
+                List<Integer> result = new ArrayList<>();
+                result.add(1);
+                iterator.forEachRemaining(result::add);
+                assertThat(result).isEqualTo(list);
+            }
+            try (Stream<Path> spillFiles = Files.list(spillDirectory)) {
+                assertThat(spillFiles.count()).isZero();
+            }
+        } finally {
+            MoreFiles.deleteRecursively(spillDirectory, RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+    }
+
+    @Test
+    void closingQueuedStreamCancelsProducer() throws InterruptedException {
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch slowFetchStarted = new CountDownLatch(1);
+        CountDownLatch fetchInterrupted = new CountDownLatch(1);
+        // one task per fetch
+        CountDownLatch producerFinished = new CountDownLatch(2);
+
+        try (Stream<Integer> stream = ExtraStreams.queuedBatchLoadingStream(nextToken -> {
+            int fetch = fetches.incrementAndGet();
+            if (fetch > 1) {
+                // simulate a slow API call; should be interrupted
+                slowFetchStarted.countDown();
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException e) {
+                    fetchInterrupted.countDown();
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return new Batch<>(String.valueOf(fetch), ImmutableList.of(fetch));
+        }, 1, completionSignallingExecutor(producerFinished))) {
+            assertThat(stream.findFirst()).contains(1);
+            assertThat(slowFetchStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        }
+
+        assertThat(fetchInterrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(producerFinished.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(fetches.get()).isEqualTo(2);
+    }
+
+    @Test
+    void abandonedQueuedStreamHoldsNoThread() throws InterruptedException {
+        AtomicInteger fetches = new AtomicInteger();
+        AtomicInteger pendingTasks = new AtomicInteger();
+        Executor executor = runnable -> {
+            pendingTasks.incrementAndGet();
+            new Thread(() -> {
+                try {
+                    runnable.run();
+                } finally {
+                    pendingTasks.decrementAndGet();
+                }
+            }).start();
+        };
+
+        Optional<Integer> first = ExtraStreams.queuedBatchLoadingStream(nextToken -> {
+            int fetch = fetches.incrementAndGet();
+            return new Batch<>(String.valueOf(fetch), ImmutableList.of(fetch));
+        }, 1, executor).findFirst();
+        assertThat(first).contains(1);
+
+        // the producer pauses, without a task, once the queue is full
+        for (int i = 0; i < 50 && pendingTasks.get() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(pendingTasks.get()).isZero();
+        assertThat(fetches.get()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void queuedStreamsShareBoundedExecutor() throws Exception {
+        List<List<Integer>> lists = Lists.partition(IntStream.rangeClosed(1, 50).boxed().collect(Collectors.toList()), 5);
+        ExecutorService executorService = Executors.newSingleThreadExecutor(ExtraThreads.defaultThreadFactory("test"));
+        ExecutorService consumer = Executors.newSingleThreadExecutor(ExtraThreads.defaultThreadFactory("consumer"));
+        try {
+            // more open streams than executor threads, each with a full queue; interleaved consumption must not deadlock
+            Future<List<List<Integer>>> results = consumer.submit(() -> {
+                List<Iterator<Integer>> iterators = new ArrayList<>();
+                List<List<Integer>> consumed = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    final int[] idx = {0};
+                    iterators.add(ExtraStreams.queuedBatchLoadingStream(
+                            nextToken -> new Batch<>(idx[0] == lists.size() - 1 ? null : String.valueOf(idx[0]), lists.get(idx[0]++)),
+                            1, executorService).iterator());
+                    consumed.add(new ArrayList<>());
+                }
+                boolean remaining = true;
+                while (remaining) {
+                    remaining = false;
+                    for (int i = 0; i < iterators.size(); i++) {
+                        if (iterators.get(i).hasNext()) {
+                            consumed.get(i).add(iterators.get(i).next());
+                            remaining = true;
+                        }
+                    }
+                }
+                return consumed;
+            });
+
+            List<Integer> expected = IntStream.rangeClosed(1, 50).boxed().collect(Collectors.toList());
+            assertThat(results.get(10, TimeUnit.SECONDS)).containsExactly(expected, expected, expected);
+        } finally {
+            consumer.shutdownNow();
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void queuedStreamFailsWhenExecutorRejectsFetch() {
+        Executor rejecting = runnable -> {
+            throw new RejectedExecutionException("saturated");
+        };
+        assertThatThrownBy(() -> ExtraStreams.queuedBatchLoadingStream(nextToken -> new Batch<>(null, ImmutableList.of(1)), 1, rejecting))
+                .isInstanceOf(RejectedExecutionException.class);
+
+        AtomicInteger submitted = new AtomicInteger();
+        Executor rejectingSecond = runnable -> {
+            if (submitted.incrementAndGet() > 1) {
+                throw new RejectedExecutionException("saturated");
+            }
+            new Thread(runnable).start();
+        };
+        Iterator<Integer> iterator = ExtraStreams.queuedBatchLoadingStream(
+                nextToken -> new Batch<>(String.valueOf(submitted.get()), ImmutableList.of(submitted.get())), 1, rejectingSecond).iterator();
+        assertThat(iterator.next()).isEqualTo(1);
+        assertThatThrownBy(iterator::hasNext).isInstanceOf(RejectedExecutionException.class);
+    }
+
+    private static Executor completionSignallingExecutor(CountDownLatch latch) {
+        return runnable -> new Thread(() -> {
+            runnable.run();
+            latch.countDown();
+        }).start();
+    }
+
+    @Test
+    void resumableBatchIterationContinuesFromCheckpoint() throws IOException {
+        List<List<Integer>> pages = Lists.partition(IntStream.rangeClosed(1, 30).boxed().collect(Collectors.toList()), 6);
+        List<String> requestedTokens = new CopyOnWriteArrayList<>();
+        BatchSupplier<Integer> supplier = nextToken -> {
+            requestedTokens.add(String.valueOf(nextToken));
+            int page = nextToken == null ? 0 : Integer.parseInt(nextToken);
+            return new Batch<>(page == pages.size() - 1 ? null : String.valueOf(page + 1), pages.get(page));
+        };
+        Path file = Files.createTempFile("ExtraStreamsTest", ".checkpoint");
+        try {
+            BatchCheckpointStore store = new FileBatchCheckpointStore(file);
+
+            // fail while processing the 9th element
+            List<Integer> processed = new ArrayList<>();
+            assertThatThrownBy(() -> ExtraStreams.checkpointingBatchLoadingStream(supplier, store, Duration.ZERO)
+                    .forEach(element -> {
+                        if (element == 9) {
+                            throw new IllegalStateException("crashed");
+                        }
+                        processed.add(element);
+                    })).isInstanceOf(IllegalStateException.class);
+            assertThat(processed).isEqualTo(IntStream.rangeClosed(1, 8).boxed().collect(Collectors.toList()));
+            assertThat(store.load()).isEqualTo(new BatchCheckpoint("1", 2));
+
+            requestedTokens.clear();
+            try (Stream<Integer> stream = ExtraStreams.resumableBatchLoadingStream(supplier, store, Duration.ofMinutes(1))) {
+                assertThat(stream.collect(Collectors.toList())).isEqualTo(IntStream.rangeClosed(9, 30).boxed().collect(Collectors.toList()));
+            }
+            assertThat(requestedTokens).containsExactly("1", "2", "3", "4");
+            assertThat(store.load()).isNull();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void checkpointIsSavedWhenStreamIsClosed() throws IOException {
+        Path file = Files.createTempFile("ExtraStreamsTest", ".checkpoint");
+        try {
+            BatchCheckpointStore store = new FileBatchCheckpointStore(file);
+            try (Stream<Integer> stream = ExtraStreams.checkpointingBatchLoadingStream(
+                    nextToken -> new Batch<>(nextToken == null ? "next" : null, ImmutableList.of(1, 2, 3)), store, Duration.ofMinutes(1))) {
+                assertThat(stream.limit(2).collect(Collectors.toList())).containsExactly(1, 2);
+            }
+
+            assertThat(store.load()).isEqualTo(new BatchCheckpoint(null, 2));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void checkpointMovesPastConsumedBatches() throws IOException {
+        List<String> requestedTokens = new CopyOnWriteArrayList<>();
+        BatchSupplier<Integer> supplier = nextToken -> {
+            requestedTokens.add(String.valueOf(nextToken));
+            return new Batch<>(nextToken == null ? "next" : null, nextToken == null ? ImmutableList.of(1, 2) : ImmutableList.of(3, 4));
+        };
+        Path file = Files.createTempFile("ExtraStreamsTest", ".checkpoint");
+        try {
+            BatchCheckpointStore store = new FileBatchCheckpointStore(file);
+            try (Stream<Integer> stream = ExtraStreams.checkpointingBatchLoadingStream(supplier, store, Duration.ofMinutes(1))) {
+                assertThat(stream.limit(2).collect(Collectors.toList())).containsExactly(1, 2);
+            }
+            assertThat(store.load()).isEqualTo(new BatchCheckpoint("next", 0));
+
+            requestedTokens.clear();
+            try (Stream<Integer> stream = ExtraStreams.resumableBatchLoadingStream(supplier, store, Duration.ofMinutes(1))) {
+                assertThat(stream.limit(2).collect(Collectors.toList())).containsExactly(3, 4);
+            }
+            assertThat(requestedTokens).containsExactly("next");
+            assertThat(store.load()).isEqualTo(BatchCheckpoint.finished());
+
+            requestedTokens.clear();
+            try (Stream<Integer> stream = ExtraStreams.resumableBatchLoadingStream(supplier, store, Duration.ofMinutes(1))) {
+                assertThat(stream.count()).isZero();
+            }
+            assertThat(requestedTokens).isEmpty();
+            assertThat(store.load()).isNull();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void mappedLineStreamSplitsOnLineBoundaries() throws IOException {
+        List<String> lines = IntStream.range(0, 200_000)
+                .mapToObj(i -> "{\"id\":" + i + ",\"name\":\"name" + i + "\"}")
+                .collect(Collectors.toList());
+        Path file = Files.createTempFile("ExtraStreamsTest", ".ndjson");
+        try {
+            Files.write(file, String.join("\r\n", lines).getBytes(StandardCharsets.UTF_8));
+
+            try (Stream<CharSequence> stream = ExtraStreams.mappedLineStream(file, StandardCharsets.UTF_8)) {
+                assertThat(stream.parallel().map(CharSequence::toString).collect(Collectors.toList())).isEqualTo(lines);
+            }
+            try (Stream<ByteBuffer> stream = ExtraStreams.mappedRecordStream(file)) {
+                assertThat(stream.parallel().count()).isEqualTo(lines.size());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void mappedLineStreamIncludesEmptyAndUnterminatedLines() throws IOException {
+        Path file = Files.createTempFile("ExtraStreamsTest", ".txt");
+        try {
+            Files.write(file, "a\n\nb".getBytes(StandardCharsets.UTF_8));
+
+            try (Stream<CharSequence> stream = ExtraStreams.mappedLineStream(file, StandardCharsets.UTF_8)) {
+                assertThat(stream.map(CharSequence::toString).collect(Collectors.toList())).containsExactly("a", "", "b");
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
 }
\ No newline at end of file
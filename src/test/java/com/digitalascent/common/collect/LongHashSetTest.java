@@ -0,0 +1,34 @@
+package com.digitalascent.common.collect;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LongHashSetTest {
+
+    @Test
+    void addReportsNewKeysOnly() {
+        LongHashSet set = new LongHashSet(4, false);
+
+        assertThat(set.add(0)).isTrue();
+        assertThat(set.add(0)).isFalse();
+        assertThat(set.add(Long.MIN_VALUE)).isTrue();
+        assertThat(set.add(-1)).isTrue();
+        assertThat(set.add(-1)).isFalse();
+        assertThat(set.size()).isEqualTo(3);
+    }
+
+    @Test
+    void growsAcrossSegmentsWithoutLosingKeys() {
+        LongHashSet set = new LongHashSet(16, true);
+        for (long key = 1; key <= 2_000_000; key++) {
+            assertThat(set.add(key << 32)).isTrue();
+        }
+        for (long key = 1; key <= 2_000_000; key++) {
+            assertThat(set.add(key << 32)).isFalse();
+        }
+
+        assertThat(set.size()).isEqualTo(2_000_000);
+        assertThat(set.memoryBytes()).isEqualTo((1 << 22) * Long.BYTES);
+    }
+}
@@ -0,0 +1,90 @@
+package com.digitalascent.common.collect;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PrefetchPolicyTest {
+
+    @Test
+    void adaptiveDepthCoversFetchLatencyWithinBounds() {
+        PrefetchPolicy<Object> policy = PrefetchPolicy.adaptive(2, 16);
+
+        // consumer drains faster than batches are fetched: prefetch enough to hide the fetch latency
+        assertThat(policy.nextBatches(TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(20))).isEqualTo(6);
+        // consumer is slower than the fetch: minimum suffices
+        assertThat(policy.nextBatches(TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(100))).isEqualTo(2);
+        // capped at maximum
+        assertThat(policy.nextBatches(TimeUnit.SECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(1))).isEqualTo(16);
+    }
+
+    @Test
+    void fixedPolicyIsNotAdaptive() {
+        assertThat(PrefetchPolicy.fixed(4).isAdaptive()).isFalse();
+        assertThat(PrefetchPolicy.fixed(4).initialBatches()).isEqualTo(4);
+        assertThatThrownBy(() -> PrefetchPolicy.adaptive(4, 2)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void weighsBatchesByElementSize() {
+        PrefetchPolicy<String> policy = PrefetchPolicy.<String>fixed(4).withMaximumQueuedBytes(100, String::length);
+        assertThat(policy.weigh(ImmutableList.of("a", "bcd"))).isEqualTo(4);
+        assertThat(PrefetchPolicy.fixed(4).withMaximumQueuedElements(10).weigh(ImmutableList.of(1, 2, 3))).isEqualTo(3);
+    }
+
+    @Test
+    void queueAdaptsCapacityToObservedTimes() throws InterruptedException {
+        PrefetchQueue<Integer> queue = new PrefetchQueue<>(PrefetchPolicy.adaptive(1, 8));
+        assertThat(queue.capacity()).isEqualTo(1);
+
+        queue.add(ImmutableList.of(1));
+        queue.add(ImmutableList.of(2));
+        queue.take();
+        Thread.sleep(5);
+        queue.take();
+        queue.recordFetch(TimeUnit.SECONDS.toNanos(1));
+
+        assertThat(queue.capacity()).isEqualTo(8);
+    }
+
+    @Test
+    void queueBoundsQueuedWeight() throws InterruptedException {
+        PrefetchQueue<Integer> queue = new PrefetchQueue<>(PrefetchPolicy.fixed(10).withMaximumQueuedElements(5));
+
+        // room is always reserved in an empty queue, whatever the weight of the batch then put
+        assertThat(queue.reserve()).isTrue();
+        queue.put(ImmutableList.of(1, 2, 3, 4, 5, 6));
+        assertThat(queue.reserve()).isFalse();
+
+        queue.take();
+        assertThat(queue.reserve()).isTrue();
+        queue.put(ImmutableList.of(7, 8, 9));
+        assertThat(queue.reserve()).isTrue();
+        queue.put(ImmutableList.of(10, 11));
+        assertThat(queue.reserve()).isFalse();
+    }
+
+    @Test
+    void queueBoundsReservedBatches() throws InterruptedException {
+        PrefetchQueue<Integer> queue = new PrefetchQueue<>(PrefetchPolicy.fixed(2));
+        AtomicInteger takes = new AtomicInteger();
+        queue.addTakeListener(takes::incrementAndGet);
+
+        assertThat(queue.reserve()).isTrue();
+        assertThat(queue.reserve()).isTrue();
+        assertThat(queue.reserve()).isFalse();
+        queue.release();
+        assertThat(queue.reserve()).isTrue();
+
+        queue.put(ImmutableList.of(1));
+        queue.put(ImmutableList.of(2));
+        assertThat(queue.take()).containsExactly(1);
+        assertThat(takes.get()).isEqualTo(1);
+        assertThat(queue.reserve()).isTrue();
+    }
+}
@@ -0,0 +1,145 @@
+package com.digitalascent.common.collect;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpillFileTest {
+    private Path directory;
+    private SpillFile<Integer> spillFile;
+
+    @BeforeEach
+    void setup() throws IOException {
+        directory = Files.createTempDirectory("SpillFileTest");
+        spillFile = new SpillFile<>(SpillPolicy.spillingTo(new ElementSerializer<Integer>() {
+            @Override
+            public void write(Integer element, DataOutput output) throws IOException {
+                output.writeInt(element);
+            }
+
+            @Override
+            public Integer read(DataInput input) throws IOException {
+                return input.readInt();
+            }
+        }).withDirectory(directory));
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        spillFile.close();
+        MoreFiles.deleteRecursively(directory, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+
+    @Test
+    void reclaimsSpaceOnceReaderCatchesUp() throws IOException {
+        spillFile.write(ImmutableList.of(1, 2, 3));
+        long oneRecord = spillFileSize();
+        spillFile.write(ImmutableList.of(4, 5, 6));
+        assertThat(spillFile.read()).containsExactly(1, 2, 3);
+        assertThat(spillFile.read()).containsExactly(4, 5, 6);
+
+        spillFile.write(ImmutableList.of(7, 8, 9));
+        assertThat(spillFileSize()).isEqualTo(oneRecord);
+        assertThat(spillFile.read()).containsExactly(7, 8, 9);
+    }
+
+    @Test
+    void interruptedReadLeavesBatchesForNextRead() throws IOException {
+        spillFile.write(ImmutableList.of(1));
+        spillFile.write(ImmutableList.of(2));
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThatThrownBy(() -> spillFile.read()).isInstanceOf(UncheckedIOException.class);
+        } finally {
+            Thread.interrupted();
+        }
+
+        spillFile.write(ImmutableList.of(3));
+        assertThat(spillFile.read()).containsExactly(1);
+        assertThat(spillFile.read()).containsExactly(2);
+        assertThat(spillFile.read()).containsExactly(3);
+    }
+
+    @Test
+    void interruptedWriteLeavesSpilledBatchesReadable() throws IOException {
+        spillFile.write(ImmutableList.of(1));
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThatThrownBy(() -> spillFile.write(ImmutableList.of(2))).isInstanceOf(UncheckedIOException.class);
+        } finally {
+            Thread.interrupted();
+        }
+
+        spillFile.write(ImmutableList.of(3));
+        assertThat(spillFile.read()).containsExactly(1);
+        assertThat(spillFile.read()).containsExactly(3);
+    }
+
+    @Test
+    void failedDecodeLeavesBatchForNextRead() {
+        AtomicBoolean failNextRead = new AtomicBoolean(true);
+        SpillFile<Integer> failingSpillFile = new SpillFile<>(SpillPolicy.spillingTo(new ElementSerializer<Integer>() {
+            @Override
+            public void write(Integer element, DataOutput output) throws IOException {
+                output.writeInt(element);
+            }
+
+            @Override
+            public Integer read(DataInput input) throws IOException {
+                if (failNextRead.getAndSet(false)) {
+                    throw new IOException("corrupt element");
+                }
+                return input.readInt();
+            }
+        }).withDirectory(directory));
+        try {
+            failingSpillFile.write(ImmutableList.of(1));
+            failingSpillFile.write(ImmutableList.of(2));
+
+            assertThatThrownBy(failingSpillFile::read).isInstanceOf(UncheckedIOException.class);
+            assertThat(failingSpillFile.read()).containsExactly(1);
+            assertThat(failingSpillFile.read()).containsExactly(2);
+        } finally {
+            failingSpillFile.close();
+        }
+    }
+
+    @Test
+    void closeDeletesSpillFile() throws IOException {
+        spillFile.write(ImmutableList.of(1));
+        spillFile.close();
+
+        assertThat(spillFiles()).isEmpty();
+    }
+
+    private long spillFileSize() throws IOException {
+        List<Path> files = spillFiles();
+        assertThat(files).hasSize(1);
+        return Files.size(files.get(0));
+    }
+
+    private List<Path> spillFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.digitalascent.common.collect;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SplittingBatchSpliteratorTest {
+
+    @Test
+    void splittingStopsOnceOutstandingPiecesAreNotProcessed() {
+        AtomicInteger fetched = new AtomicInteger();
+        Spliterator<List<Integer>> batches = Stream.<List<Integer>>generate(() -> ImmutableList.of(fetched.incrementAndGet()))
+                .limit(1000)
+                .spliterator();
+        SplittingBatchSpliterator<Integer> spliterator = new SplittingBatchSpliterator<>(batches);
+
+        // split off pieces without processing them, as a short-circuited operation would abandon them
+        List<Spliterator<Integer>> pieces = new ArrayList<>();
+        Spliterator<Integer> piece;
+        while ((piece = spliterator.trySplit()) != null) {
+            pieces.add(piece);
+        }
+
+        int maximumPieces = 2 * ForkJoinPool.getCommonPoolParallelism();
+        assertThat(pieces).hasSize(maximumPieces);
+        assertThat(fetched.get()).isEqualTo(maximumPieces);
+    }
+
+    @Test
+    void processedPiecesReturnTheirPermits() {
+        Spliterator<List<Integer>> batches = Stream.<List<Integer>>generate(() -> ImmutableList.of(1)).limit(100).spliterator();
+        SplittingBatchSpliterator<Integer> spliterator = new SplittingBatchSpliterator<>(batches);
+
+        int pieces = 0;
+        AtomicInteger sum = new AtomicInteger();
+        Spliterator<Integer> piece;
+        while ((piece = spliterator.trySplit()) != null) {
+            piece.forEachRemaining(sum::addAndGet);
+            pieces++;
+        }
+
+        assertThat(pieces).isEqualTo(100);
+        assertThat(sum.get()).isEqualTo(100);
+    }
+}
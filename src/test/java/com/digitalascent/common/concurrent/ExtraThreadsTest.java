@@ -0,0 +1,57 @@
+package com.digitalascent.common.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExtraThreadsTest {
+
+    @Test
+    void virtualThreadFactoryNamesThreadsLikePlatformThreads() {
+        if (!ExtraThreads.isVirtualThreadSupported()) {
+            assertThatThrownBy(() -> ExtraThreads.virtualThreadFactory("virtual")).isInstanceOf(IllegalStateException.class);
+            return;
+        }
+        ThreadFactory threadFactory = ExtraThreads.virtualThreadFactory("virtual");
+        Thread first = threadFactory.newThread(() -> {
+        });
+        Thread second = threadFactory.newThread(() -> {
+        });
+
+        assertThat(first.getName()).startsWith("virtual-").endsWith("-0");
+        assertThat(second.getName()).startsWith("virtual-").endsWith("-1");
+        assertThat(first.getUncaughtExceptionHandler()).isSameAs(ExtraThreads.defaultUncaughtExceptionHandler());
+    }
+
+    @Test
+    void virtualThreadPerTaskExecutorRunsTasks() throws Exception {
+        if (!ExtraThreads.isVirtualThreadSupported()) {
+            assertThatThrownBy(() -> ExtraExecutors.newVirtualThreadPerTaskExecutor("virtual")).isInstanceOf(IllegalStateException.class);
+            return;
+        }
+        ExecutorService executorService = ExtraExecutors.newVirtualThreadPerTaskExecutor("virtual");
+        try {
+            Future<String> threadName = executorService.submit(() -> Thread.currentThread().getName());
+            assertThat(threadName.get(5, TimeUnit.SECONDS)).startsWith("virtual-");
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void threadPerTaskExecutorRunsTasksWithOrWithoutVirtualThreads() throws Exception {
+        ExecutorService executorService = ExtraExecutors.newThreadPerTaskExecutor("per-task");
+        try {
+            Future<String> threadName = executorService.submit(() -> Thread.currentThread().getName());
+            assertThat(threadName.get(5, TimeUnit.SECONDS)).startsWith("per-task-");
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.digitalascent.common.concurrent;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TaskGroupTest {
+    private final ExecutorService executorService = Executors.newCachedThreadPool(ExtraThreads.defaultThreadFactory("test"));
+
+    @AfterEach
+    void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void submitBlocksAtMaximumConcurrency() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maximumRunning = new AtomicInteger();
+        try (TaskGroup<Integer> group = TaskGroup.create(executorService, 4)) {
+            for (int i = 0; i < 50; i++) {
+                int task = i;
+                group.submit(() -> {
+                    maximumRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Uninterruptibles.sleepUninterruptibly(2, TimeUnit.MILLISECONDS);
+                    running.decrementAndGet();
+                    return task;
+                });
+                assertThat(group.running()).isLessThanOrEqualTo(4);
+            }
+            List<Integer> results = group.awaitAll();
+
+            assertThat(new HashSet<>(results)).hasSize(50);
+            assertThat(maximumRunning.get()).isLessThanOrEqualTo(4);
+        }
+    }
+
+    @Test
+    void trySubmitRejectsWhenSaturated() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (TaskGroup<String> group = TaskGroup.create(executorService, 2)) {
+            group.trySubmit(() -> Uninterruptibles.awaitUninterruptibly(release));
+            group.trySubmit(() -> Uninterruptibles.awaitUninterruptibly(release));
+
+            assertThatThrownBy(() -> group.trySubmit(() -> "rejected")).isInstanceOf(RejectedExecutionException.class);
+
+            release.countDown();
+            assertThat(group.awaitAll()).isEmpty();
+            group.trySubmit(() -> "accepted");
+            assertThat(group.take()).isEqualTo("accepted");
+        }
+    }
+
+    @Test
+    void takeReturnsResultsAsTheyComplete() throws Exception {
+        CountDownLatch releaseSlow = new CountDownLatch(1);
+        try (TaskGroup<String> group = TaskGroup.create(executorService, 2)) {
+            group.submit(() -> {
+                releaseSlow.await();
+                return "slow";
+            });
+            group.submit(() -> "fast");
+
+            assertThat(group.take()).isEqualTo("fast");
+            releaseSlow.countDown();
+            assertThat(group.take()).isEqualTo("slow");
+            assertThatThrownBy(group::take).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    void firstFailureCancelsRemainingTasks() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        try (TaskGroup<String> group = TaskGroup.create(executorService, 4)) {
+            group.submit(() -> {
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return "slow";
+            });
+            started.await();
+            group.submit(() -> {
+                throw new IllegalArgumentException("boom");
+            });
+
+            assertThatThrownBy(group::awaitAll)
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(IllegalArgumentException.class);
+            assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThatThrownBy(() -> group.submit(() -> "late")).isInstanceOf(RejectedExecutionException.class);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.digitalascent.common.io;
+
+import com.google.common.base.Ticker;
+import com.google.common.io.ByteStreams;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveGZIPOutputStreamTest {
+
+    @Test
+    void lowersLevelWhenBelowTargetThroughput() throws IOException {
+        // each block takes 1s to compress; 1KB/s is far below target
+        AdaptiveCompressionPolicy policy = AdaptiveCompressionPolicy.forTargetThroughput(1024 * 1024)
+                .withBlockSize(1024);
+        AdaptiveCompressionStatistics statistics = new AdaptiveCompressionStatistics();
+
+        byte[] compressed = compress(policy, statistics, new SteppingTicker(TimeUnit.SECONDS.toNanos(1)));
+
+        assertThat(statistics.currentLevel()).isEqualTo(GzipCompressionLevel.BEST_SPEED.getValue());
+        assertThat(statistics.levelDecreases()).isEqualTo(5);
+        assertThat(statistics.levelIncreases()).isZero();
+        assertThat(decompress(compressed)).isEqualTo(input());
+    }
+
+    @Test
+    void raisesLevelWhenAboveTargetThroughput() throws IOException {
+        // each block takes 1ns to compress
+        AdaptiveCompressionPolicy policy = AdaptiveCompressionPolicy.forTargetThroughput(1024)
+                .withBlockSize(1024);
+        AdaptiveCompressionStatistics statistics = new AdaptiveCompressionStatistics();
+
+        byte[] compressed = compress(policy, statistics, new SteppingTicker(1));
+
+        assertThat(statistics.currentLevel()).isEqualTo(GzipCompressionLevel.BEST_COMPRESSION.getValue());
+        assertThat(statistics.levelIncreases()).isEqualTo(3);
+        assertThat(decompress(compressed)).isEqualTo(input());
+    }
+
+    @Test
+    void lowersLevelWhenBacklogExceeded() throws IOException {
+        AdaptiveCompressionPolicy policy = AdaptiveCompressionPolicy.forTargetThroughput(1024)
+                .withBlockSize(1024)
+                .withLevelRange(2, 8)
+                .withBacklog(() -> 1000, 10);
+        AdaptiveCompressionStatistics statistics = new AdaptiveCompressionStatistics();
+
+        byte[] compressed = compress(policy, statistics, new SteppingTicker(1));
+
+        assertThat(statistics.currentLevel()).isEqualTo(2);
+        assertThat(decompress(compressed)).isEqualTo(input());
+    }
+
+    private static byte[] compress(AdaptiveCompressionPolicy policy, AdaptiveCompressionStatistics statistics, Ticker ticker) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (AdaptiveGZIPOutputStream outputStream = new AdaptiveGZIPOutputStream(compressed, policy, statistics, ticker)) {
+            outputStream.write(input());
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        return ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+    }
+
+    private static byte[] input() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class SteppingTicker extends Ticker {
+        private final long stepNanos;
+        private long nanos;
+
+        SteppingTicker(long stepNanos) {
+            this.stepNanos = stepNanos;
+        }
+
+        @Override
+        public long read() {
+            nanos += stepNanos;
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.digitalascent.common.io;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AsyncGZIPOutputStreamTest {
+
+    @Test
+    void compressesAcrossBuffers() throws IOException {
+        byte[] input = input();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream outputStream = new AsyncGZIPOutputStream(compressed, GzipCompressionLevel.BALANCED, 1024, 2, null)) {
+            for (int i = 0; i < input.length; i += 100) {
+                outputStream.write(input, i, Math.min(100, input.length - i));
+            }
+            outputStream.write('!');
+        }
+
+        byte[] expected = new byte[input.length + 1];
+        System.arraycopy(input, 0, expected, 0, input.length);
+        expected[input.length] = '!';
+        assertThat(decompress(compressed.toByteArray())).isEqualTo(expected);
+    }
+
+    @Test
+    void flushHandsWrittenDataToUnderlyingStream() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream outputStream = new AsyncGZIPOutputStream(compressed, GzipCompressionLevel.BALANCED, 1024, 2, MoreExecutors.directExecutor());
+        outputStream.write(input());
+        int sizeBeforeFlush = compressed.size();
+        outputStream.flush();
+
+        assertThat(compressed.size()).isGreaterThan(sizeBeforeFlush);
+        outputStream.close();
+        assertThat(decompress(compressed.toByteArray())).isEqualTo(input());
+    }
+
+    @Test
+    void surfacesBackgroundFailureOnNextCall() throws IOException {
+        OutputStream failing = new OutputStream() {
+            private int written;
+
+            @Override
+            public void write(int b) throws IOException {
+                // allow the gzip header to be written
+                if (++written > 10) {
+                    throw new IOException("disk full");
+                }
+            }
+        };
+        OutputStream outputStream = new AsyncGZIPOutputStream(failing, GzipCompressionLevel.BALANCED, 1024, 2, MoreExecutors.directExecutor());
+
+        assertThatThrownBy(() -> {
+            outputStream.write(input());
+            outputStream.flush();
+        }).isInstanceOf(IOException.class).hasMessageContaining("disk full");
+        assertThatThrownBy(outputStream::close).isInstanceOf(IOException.class).hasMessageContaining("disk full");
+    }
+
+    @Test
+    void closeClosesUnderlyingStreamAfterFailure() throws IOException {
+        AtomicBoolean closed = new AtomicBoolean();
+        OutputStream failing = new OutputStream() {
+            private int written;
+
+            @Override
+            public void write(int b) throws IOException {
+                // allow the gzip header to be written
+                if (++written > 10) {
+                    throw new IOException("disk full");
+                }
+            }
+
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+        OutputStream outputStream = new AsyncGZIPOutputStream(failing, GzipCompressionLevel.BALANCED, 1024, 2, null);
+
+        assertThatThrownBy(() -> {
+            outputStream.write(input());
+            outputStream.flush();
+        }).isInstanceOf(IOException.class).hasMessageContaining("disk full");
+        assertThatThrownBy(outputStream::close).isInstanceOf(IOException.class).hasMessageContaining("disk full");
+        assertThat(closed.get()).isTrue();
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        return ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+    }
+
+    private static byte[] input() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
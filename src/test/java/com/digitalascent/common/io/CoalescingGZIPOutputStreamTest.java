@@ -0,0 +1,101 @@
+package com.digitalascent.common.io;
+
+import com.google.common.base.Ticker;
+import com.google.common.io.ByteStreams;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CoalescingGZIPOutputStreamTest {
+
+    private ByteArrayOutputStream compressed;
+    private ManualTicker ticker;
+    private CoalescingGZIPOutputStream outputStream;
+
+    @BeforeEach
+    void setup() throws IOException {
+        compressed = new ByteArrayOutputStream();
+        ticker = new ManualTicker();
+        outputStream = new CoalescingGZIPOutputStream(compressed, GzipCompressionLevel.BALANCED, Duration.ofMillis(100), 1024, null, ticker);
+    }
+
+    @Test
+    void coalescesFlushesWithinLatency() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            outputStream.write(line(i));
+            outputStream.flush();
+            ticker.advance(5);
+        }
+
+        assertThat(outputStream.flushCount()).isZero();
+        assertThat(outputStream.coalescedFlushCount()).isEqualTo(10);
+    }
+
+    @Test
+    void flushesOnceLatencyElapsed() throws IOException {
+        outputStream.write(line(1));
+        ticker.advance(100);
+        outputStream.flush();
+
+        assertThat(outputStream.flushCount()).isEqualTo(1);
+        assertThat(decompressAvailable()).isEqualTo("line 1\n");
+    }
+
+    @Test
+    void flushesOnceByteLimitReached() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            outputStream.write(line(i));
+        }
+
+        assertThat(outputStream.flushCount()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    void producesValidStreamOnClose() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            outputStream.write(line(i));
+            outputStream.flush();
+            expected.append(new String(line(i), StandardCharsets.UTF_8));
+            ticker.advance(30);
+        }
+        outputStream.close();
+
+        String decompressed = new String(ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))), StandardCharsets.UTF_8);
+        assertThat(decompressed).isEqualTo(expected.toString());
+    }
+
+    private String decompressAvailable() throws IOException {
+        // a tailing reader sees everything up to the last sync flush; the stream is not yet terminated
+        GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()));
+        byte[] buffer = new byte[1024];
+        int read = inputStream.read(buffer);
+        return new String(buffer, 0, read, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] line(int i) {
+        return ("line " + i + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class ManualTicker extends Ticker {
+        private long nanos;
+
+        void advance(long millis) {
+            nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.digitalascent.common.io;
+
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompressionCodecsTest {
+
+    static Stream<CompressionCodec> codecs() {
+        return Stream.of(CompressionCodecs.gzip(),
+                CompressionCodecs.deflate(GzipCompressionLevel.BEST_SPEED),
+                CompressionCodecs.zlib(GzipCompressionLevel.BALANCED),
+                CompressionCodecs.lz4(),
+                CompressionCodecs.lz4(1024 * 1024));
+    }
+
+    @ParameterizedTest
+    @MethodSource("codecs")
+    void roundTripsEmptyInput(CompressionCodec codec) throws IOException {
+        assertThat(roundTrip(codec, new byte[0])).isEmpty();
+    }
+
+    @ParameterizedTest
+    @MethodSource("codecs")
+    void roundTripsCompressibleInput(CompressionCodec codec) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append("{\"id\":").append(i).append(",\"name\":\"item").append(i % 97).append("\"}\n");
+        }
+        byte[] input = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        assertThat(roundTrip(codec, input)).isEqualTo(input);
+    }
+
+    @ParameterizedTest
+    @MethodSource("codecs")
+    void roundTripsIncompressibleInput(CompressionCodec codec) throws IOException {
+        byte[] input = new byte[300_000];
+        new Random(1).nextBytes(input);
+
+        assertThat(roundTrip(codec, input)).isEqualTo(input);
+    }
+
+    @ParameterizedTest
+    @MethodSource("codecs")
+    void roundTripsViaSinkAndSource(CompressionCodec codec) throws IOException {
+        byte[] input = "foo bar foo bar foo bar foo bar".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        codec.compressingSink(new ByteSink() {
+            @Override
+            public OutputStream openStream() {
+                return compressed;
+            }
+        }).write(input);
+
+        assertThat(codec.decompressingSource(ByteSource.wrap(compressed.toByteArray())).read()).isEqualTo(input);
+    }
+
+    @SuppressWarnings("CheckReturnValue")
+    @Test
+    void lz4ReadsConcatenatedFrames() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        for (int i = 0; i < 2; i++) {
+            try (OutputStream outputStream = CompressionCodecs.lz4().compressingStream(ExtraByteStreams.closeSuppressingOutputStream(compressed))) {
+                outputStream.write("abcabcabcabcabcabc".getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+                outputStream.write('z');
+            }
+        }
+
+        try (InputStream inputStream = CompressionCodecs.lz4().decompressingStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            assertThat(new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8))
+                    .isEqualTo("abcabcabcabcabcabczabcabcabcabcabcabcz");
+        }
+    }
+
+    private static byte[] roundTrip(CompressionCodec codec, byte[] input) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream outputStream = codec.compressingStream(compressed)) {
+            outputStream.write(input);
+        }
+        try (InputStream inputStream = codec.decompressingStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            return ByteStreams.toByteArray(inputStream);
+        }
+    }
+}
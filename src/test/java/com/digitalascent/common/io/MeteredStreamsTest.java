@@ -0,0 +1,64 @@
+package com.digitalascent.common.io;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MeteredStreamsTest {
+
+    @Test
+    void countsBytesAndCalls() throws IOException {
+        IoMeter meter = new IoMeter("source");
+        try (InputStream inputStream = MeteredStreams.metered(new ByteArrayInputStream(new byte[1000]), meter)) {
+            ByteStreams.exhaust(inputStream);
+        }
+
+        IoMeterSnapshot snapshot = meter.snapshot();
+        assertThat(snapshot.name()).isEqualTo("source");
+        assertThat(snapshot.transferred()).isEqualTo(1000);
+        assertThat(snapshot.calls()).isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    void identifiesBottleneckStage() throws IOException {
+        IoPipelineMeter pipeline = new IoPipelineMeter();
+        IoMeter json = pipeline.stage("json");
+        IoMeter gzip = pipeline.stage("gzip");
+        IoMeter file = pipeline.stage("file");
+
+        OutputStream slowFile = new OutputStream() {
+            @Override
+            public void write(int b) {
+                // not used
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                Uninterruptibles.sleepUninterruptibly(5, TimeUnit.MILLISECONDS);
+            }
+        };
+        OutputStream fileStream = MeteredStreams.metered(slowFile, file);
+        OutputStream gzipStream = MeteredStreams.metered(ExtraByteStreams.gzipOutputStream(fileStream), gzip);
+        try (Writer writer = MeteredStreams.metered(new OutputStreamWriter(gzipStream, StandardCharsets.UTF_8), json)) {
+            for (int i = 0; i < 100; i++) {
+                writer.write("{\"id\":" + i + "}\n");
+            }
+        }
+
+        IoPipelineSnapshot snapshot = pipeline.snapshot();
+        assertThat(snapshot.stages()).extracting(IoMeterSnapshot::name).containsExactly("json", "gzip", "file");
+        assertThat(snapshot.stages().get(0).transferred()).isGreaterThan(snapshot.stages().get(2).transferred());
+        assertThat(snapshot.bottleneck().name()).isEqualTo("file");
+    }
+}
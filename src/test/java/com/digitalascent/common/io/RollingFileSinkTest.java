@@ -0,0 +1,116 @@
+package com.digitalascent.common.io;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RollingFileSinkTest {
+
+    private Path directory;
+
+    @BeforeEach
+    void setup() throws IOException {
+        directory = Files.createTempDirectory("RollingFileSinkTest");
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        MoreFiles.deleteRecursively(directory, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+
+    @Test
+    void rotatesBySizeAndCompressesClosedSegments() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        try (RollingFileSink sink = RollingFileSink.builder(directory, "events")
+                .maxSegmentBytes(1000)
+                .compression(CompressionCodecs.gzip())
+                .build()) {
+            for (int i = 0; i < 500; i++) {
+                byte[] line = ("{\"id\":" + i + "}\n").getBytes(StandardCharsets.UTF_8);
+                sink.write(line);
+                expected.append(new String(line, StandardCharsets.UTF_8));
+            }
+        }
+
+        List<Path> segments = segments();
+        assertThat(segments).hasSizeGreaterThan(1);
+        assertThat(segments).allMatch(path -> path.getFileName().toString().endsWith(".log.gz"));
+
+        StringBuilder actual = new StringBuilder();
+        for (Path segment : segments) {
+            byte[] bytes = new GzipByteSource(com.google.common.io.Files.asByteSource(segment.toFile())).read();
+            assertThat(bytes.length).isLessThanOrEqualTo(1000);
+            actual.append(new String(bytes, StandardCharsets.UTF_8));
+        }
+        assertThat(actual.toString()).isEqualTo(expected.toString());
+    }
+
+    @Test
+    void writerWaitsForRoomInFullCompressionQueue() throws IOException {
+        RollingFileSink sink = RollingFileSink.builder(directory, "events")
+                .maxSegmentBytes(100)
+                .compression(CompressionCodecs.gzip())
+                .compressionPool(1, 1)
+                .build();
+        try {
+            for (int i = 0; i < 200; i++) {
+                sink.write(("{\"id\":" + i + "}\n").getBytes(StandardCharsets.UTF_8));
+            }
+        } finally {
+            sink.close();
+        }
+
+        assertThat(sink.compressionFailures()).isEqualTo(0);
+        assertThat(sink.compressedSegments()).isEqualTo(segments().size());
+        assertThat(sink.compressionWait().isNegative()).isFalse();
+        assertThat(segments()).allMatch(path -> path.getFileName().toString().endsWith(".log.gz"));
+    }
+
+    @Test
+    void sinksSharingBaseNameDoNotCollide() throws IOException {
+        try (RollingFileSink first = RollingFileSink.builder(directory, "events").maxSegmentBytes(1000).build();
+             RollingFileSink second = RollingFileSink.builder(directory, "events").maxSegmentBytes(1000).build()) {
+            first.write("first\n".getBytes(StandardCharsets.UTF_8));
+            second.write("second\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<Path> segments = segments();
+        assertThat(segments).hasSize(2);
+        StringBuilder contents = new StringBuilder();
+        for (Path segment : segments) {
+            contents.append(new String(Files.readAllBytes(segment), StandardCharsets.UTF_8));
+        }
+        assertThat(contents.toString()).contains("first\n").contains("second\n");
+    }
+
+    @Test
+    void leavesSegmentsUncompressedWithoutCodec() throws IOException {
+        try (RollingFileSink sink = RollingFileSink.builder(directory, "events").maxSegmentBytes(10).build()) {
+            sink.write("0123456789".getBytes(StandardCharsets.UTF_8));
+            sink.write("abc".getBytes(StandardCharsets.UTF_8));
+            assertThat(sink.queueDepth()).isZero();
+        }
+
+        List<Path> segments = segments();
+        assertThat(segments).hasSize(2);
+        assertThat(new String(Files.readAllBytes(segments.get(1)), StandardCharsets.UTF_8)).isEqualTo("abc");
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.sorted().collect(Collectors.toList());
+        }
+    }
+}